@@ -0,0 +1,91 @@
+package crud.benchmark;
+
+import crud.model.Aviao;
+import crud.model.Pessoa;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aviao.adicionarTripulante com tripulações de tamanhos diferentes. Cada
+ * medição adiciona um tripulante e o remove, para a tripulação não crescer
+ * durante a iteração.
+ *
+ * <p>Os métodos "compartilhado" usam um único avião para todas as threads
+ * (disputa pelo lock do avião); os outros, um avião por thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AviaoBenchmark {
+    @Param({"0", "100", "10000"})
+    public int tripulacao;
+
+    Aviao compartilhado;
+
+    @Setup(Level.Trial)
+    public void montar() {
+        compartilhado = comTripulacao(tripulacao);
+    }
+
+    @State(Scope.Thread)
+    public static class Proprio {
+        Aviao aviao;
+        Pessoa tripulante;
+
+        @Setup(Level.Trial)
+        public void montar(AviaoBenchmark benchmark, ThreadParams thread) {
+            aviao = comTripulacao(benchmark.tripulacao);
+            // fora da tripulação montada e diferente por thread: sempre entra e sai de verdade
+            int indice = (Integer.MAX_VALUE / Dados.TRIPULANTE_A_CADA - thread.getThreadIndex()) * Dados.TRIPULANTE_A_CADA;
+            tripulante = Dados.pessoa(indice);
+        }
+    }
+
+    static Aviao comTripulacao(int tamanho) {
+        Aviao aviao = new Aviao("Bench", 2000, "Tripulacao");
+        for (int i = 0; i < tamanho; i++) {
+            aviao.adicionarTripulante(Dados.pessoa(i * Dados.TRIPULANTE_A_CADA));
+        }
+        return aviao;
+    }
+
+    @Benchmark
+    public boolean adicionarTripulante(Proprio proprio) {
+        proprio.aviao.adicionarTripulante(proprio.tripulante);
+        return proprio.aviao.removerTripulante(proprio.tripulante.getCpf());
+    }
+
+    /**
+     * Inclui a leitura da tripulação em seguida, que refaz a cópia entregue aos leitores
+     */
+    @Benchmark
+    public List<Pessoa> adicionarTripulanteELer(Proprio proprio) {
+        proprio.aviao.adicionarTripulante(proprio.tripulante);
+        List<Pessoa> tripulantes = proprio.aviao.getTripulantes();
+        proprio.aviao.removerTripulante(proprio.tripulante.getCpf());
+        return tripulantes;
+    }
+
+    @Benchmark
+    public boolean adicionarTripulanteCompartilhado(Proprio proprio) {
+        compartilhado.adicionarTripulante(proprio.tripulante);
+        return compartilhado.removerTripulante(proprio.tripulante.getCpf());
+    }
+}
@@ -0,0 +1,65 @@
+package crud.benchmark;
+
+import crud.model.Aviao;
+import crud.repository.AviaoRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AviaoRepository.update (troca de chave) com N aviões no repositório. Cada
+ * thread renomeia o próprio avião, alternando o ano, então as threads só
+ * disputam as listras de lock e os índices, nunca a mesma chave.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AviaoRepositoryBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int avioes;
+
+    AviaoRepository aviaoRepository;
+
+    @Setup(Level.Trial)
+    public void popular() {
+        aviaoRepository = new AviaoRepository();
+        for (int i = 0; i < avioes; i++) {
+            aviaoRepository.insert(new Aviao(Dados.modelo(i), Dados.ano(i), Dados.marca(i)));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Renomeacao {
+        String modelo;
+        boolean renomeado;
+
+        @Setup(Level.Trial)
+        public void iniciar(AviaoRepositoryBenchmark benchmark, ThreadParams thread) {
+            modelo = "Bench" + thread.getThreadIndex();
+            benchmark.aviaoRepository.insert(new Aviao(modelo, 2000, "Thread"));
+        }
+    }
+
+    @Benchmark
+    public boolean update(Renomeacao renomeacao) {
+        int ano = renomeacao.renomeado ? 2001 : 2000;
+        renomeacao.renomeado = !renomeacao.renomeado;
+        return aviaoRepository.update(renomeacao.modelo, ano, "Thread",
+            renomeacao.modelo, 4001 - ano, "Thread");
+    }
+}
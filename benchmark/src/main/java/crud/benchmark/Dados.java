@@ -0,0 +1,86 @@
+package crud.benchmark;
+
+import crud.model.Aviao;
+import crud.model.Passageiro;
+import crud.model.Pessoa;
+import crud.model.Tripulante;
+import crud.repository.AviaoRepository;
+import crud.repository.PessoaRepository;
+import crud.repository.RepositoryManager;
+
+/**
+ * Massa de dados dos benchmarks: N pessoas com CPFs 0..N-1 (um tripulante a cada
+ * dez, o resto passageiros) e um avião a cada mil pessoas (no mínimo 16), cada um
+ * com alguns tripulantes. Sempre a mesma para o mesmo N.
+ */
+final class Dados {
+    static final int TRIPULANTE_A_CADA = 10;
+    static final int TRIPULACAO = 5;
+    static final int MINIMO_AVIOES = 16;
+
+    private Dados() {
+    }
+
+    static RepositoryManager popular(int pessoas) {
+        RepositoryManager repositoryManager = new RepositoryManager();
+        PessoaRepository pessoaRepository = repositoryManager.getPessoaRepository();
+        for (int i = 0; i < pessoas; i++) {
+            pessoaRepository.insert(pessoa(i));
+        }
+
+        AviaoRepository aviaoRepository = repositoryManager.getAviaoRepository();
+        int tripulantes = (pessoas + TRIPULANTE_A_CADA - 1) / TRIPULANTE_A_CADA;
+        for (int i = 0; i < avioes(pessoas); i++) {
+            Aviao aviao = new Aviao(modelo(i), ano(i), marca(i));
+            for (int j = 0; j < TRIPULACAO && j < tripulantes; j++) {
+                int tripulante = (i * TRIPULACAO + j) % tripulantes;
+                aviao.adicionarTripulante(pessoaRepository.get(cpf(tripulante * TRIPULANTE_A_CADA)));
+            }
+            aviaoRepository.insert(aviao);
+        }
+        return repositoryManager;
+    }
+
+    static Pessoa pessoa(int i) {
+        String cpf = cpf(i);
+        if (i % TRIPULANTE_A_CADA == 0) {
+            return new Tripulante(cpf, "Tripulante " + i, "Rua " + i, 5000 + i % 1000, "Comissario");
+        }
+        return new Passageiro(cpf, "Passageiro " + i, "Rua " + i, (i % 30 + 1) + "A");
+    }
+
+    static int avioes(int pessoas) {
+        return Math.max(MINIMO_AVIOES, pessoas / 1000);
+    }
+
+    /**
+     * CPF da i-ésima pessoa: 11 dígitos, com zeros à esquerda (ordem do índice = ordem numérica)
+     */
+    static String cpf(long i) {
+        char[] digitos = new char[11];
+        for (int p = 10; p >= 0; p--) {
+            digitos[p] = (char) ('0' + i % 10);
+            i /= 10;
+        }
+        return new String(digitos);
+    }
+
+    static String modelo(int i) {
+        return "Modelo" + i;
+    }
+
+    static int ano(int i) {
+        return 2000 + i % 20;
+    }
+
+    static String marca(int i) {
+        return "Marca" + i % 8;
+    }
+
+    /**
+     * Parte do comando que identifica o i-ésimo avião: modelo;ano;marca
+     */
+    static String chaveAviao(int i) {
+        return modelo(i) + ";" + ano(i) + ";" + marca(i);
+    }
+}
@@ -0,0 +1,102 @@
+package crud.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Roda os benchmarks uma vez para cada número de threads, gravando os
+ * resultados de cada rodada em JSON (resultados/jmh-threads-N.json, ou no
+ * diretório de --saida).
+ *
+ * <p>Para as opções do próprio JMH (profilers, -p, -f ...), use
+ * {@code java -cp benchmarks.jar org.openjdk.jmh.Main}.
+ */
+public class Executar {
+    private static final String THREADS_PADRAO = "1,2,4,8";
+
+    /**
+     * Uso: Executar [regex...] [--threads=1,2,4,8] [--tamanhos=1000,100000,...]
+     *               [--saida=diretorio] [--jvm-args="-Xmx8g ..."] [--rapido]
+     *
+     * <p>regex seleciona os benchmarks (padrão: todos). --tamanhos substitui os
+     * tamanhos de massa (pessoas e aviões); com 10 milhões, o fork precisa de
+     * bastante heap (ex.: --jvm-args=-Xmx8g). --rapido faz uma iteração curta de cada,
+     * só para conferir que tudo roda.
+     */
+    public static void main(String[] args) throws RunnerException {
+        List<String> filtros = new ArrayList<>();
+        String threads = THREADS_PADRAO;
+        String tamanhos = null;
+        String saida = "resultados";
+        String jvmArgs = null;
+        boolean rapido = false;
+
+        for (String arg : args) {
+            if (arg.startsWith("--threads=")) {
+                threads = arg.substring("--threads=".length());
+            } else if (arg.startsWith("--tamanhos=")) {
+                tamanhos = arg.substring("--tamanhos=".length());
+            } else if (arg.startsWith("--saida=")) {
+                saida = arg.substring("--saida=".length());
+            } else if (arg.startsWith("--jvm-args=")) {
+                jvmArgs = arg.substring("--jvm-args=".length());
+            } else if (arg.equals("--rapido")) {
+                rapido = true;
+            } else if (arg.startsWith("--")) {
+                System.err.println("Opção desconhecida: " + arg);
+                return;
+            } else {
+                filtros.add(arg);
+            }
+        }
+
+        List<Integer> contagens = new ArrayList<>();
+        for (String n : threads.split(",")) {
+            try {
+                contagens.add(Integer.parseInt(n.trim()));
+            } catch (NumberFormatException e) {
+                System.err.println("Número de threads inválido: " + n);
+                return;
+            }
+            if (contagens.getLast() < 1) {
+                System.err.println("Número de threads deve ser pelo menos 1!");
+                return;
+            }
+        }
+        if (filtros.isEmpty()) {
+            filtros.add(Executar.class.getPackageName() + ".*");
+        }
+        new File(saida).mkdirs();
+
+        for (int n : contagens) {
+            ChainedOptionsBuilder opcoes = new OptionsBuilder()
+                .threads(n)
+                .resultFormat(ResultFormatType.JSON)
+                .result(new File(saida, "jmh-threads-" + n + ".json").getPath());
+            for (String filtro : filtros) {
+                opcoes.include(filtro);
+            }
+            if (tamanhos != null) {
+                String[] valores = tamanhos.split(",");
+                opcoes.param("pessoas", valores).param("avioes", valores);
+            }
+            if (jvmArgs != null) {
+                opcoes.jvmArgsAppend(jvmArgs.trim().split("\\s+"));
+            }
+            if (rapido) {
+                opcoes.warmupIterations(1).warmupTime(TimeValue.milliseconds(200))
+                    .measurementIterations(1).measurementTime(TimeValue.milliseconds(200));
+            }
+            System.out.println("=== " + n + " thread(s) ===");
+            new Runner(opcoes.build()).run();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package crud.benchmark;
+
+import crud.repository.RepositoryManager;
+import crud.service.CacheListagens;
+import crud.service.MessageProcessor;
+import crud.service.ResponseSink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MessageProcessor.processMessage por tipo de operação, sobre a massa de
+ * {@link Dados}, sem journal (só o custo em memória do comando). A resposta vai
+ * para um sink que só consome as linhas, como se fossem enviadas ao cliente.
+ *
+ * <p>As escritas de cada thread usam CPFs e um avião só dela, para que threads
+ * concorrentes não desfaçam o trabalho umas das outras.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageProcessorBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int pessoas;
+
+    RepositoryManager repositoryManager;
+    MessageProcessor processor;
+    MessageProcessor processorComCache;
+
+    @Setup(Level.Trial)
+    public void popular() {
+        repositoryManager = Dados.popular(pessoas);
+        processor = new MessageProcessor(repositoryManager);
+        processorComCache = new MessageProcessor(repositoryManager, null,
+            new CacheListagens(CacheListagens.LIMITE_PADRAO_BYTES));
+    }
+
+    /**
+     * Estado de cada thread: sorteio, CPFs novos e o avião que só ela altera
+     */
+    @State(Scope.Thread)
+    public static class Cliente {
+        // CPFs novos circulam nesta faixa: depois da primeira volta o INSERT substitui
+        private static final int CPFS_NOVOS = 1 << 16;
+
+        final SplittableRandom random = new SplittableRandom();
+        long baseCpf;
+        int proximoCpf;
+        String modelo;
+        boolean renomeado;
+        int pessoas;
+        int avioes;
+
+        @Setup(Level.Trial)
+        public void iniciar(MessageProcessorBenchmark benchmark, ThreadParams thread) {
+            pessoas = benchmark.pessoas;
+            avioes = Dados.avioes(pessoas);
+            baseCpf = 90_000_000_000L + thread.getThreadIndex() * 1_000_000L;
+            modelo = "Bench" + thread.getThreadIndex();
+            benchmark.processor.processMessage("INSERT;AVIAO;" + modelo + ";2000;Thread");
+        }
+
+        String cpfNovo() {
+            proximoCpf = (proximoCpf + 1) % CPFS_NOVOS;
+            return Dados.cpf(baseCpf + proximoCpf);
+        }
+
+        /**
+         * CPF de um passageiro da massa
+         */
+        String passageiro() {
+            return Dados.cpf(random.nextInt(pessoas / Dados.TRIPULANTE_A_CADA) * Dados.TRIPULANTE_A_CADA + 1);
+        }
+
+        String tripulante() {
+            return Dados.cpf(random.nextInt(pessoas / Dados.TRIPULANTE_A_CADA) * Dados.TRIPULANTE_A_CADA);
+        }
+
+        /**
+         * modelo;ano;marca de um avião da massa
+         */
+        String aviao() {
+            return Dados.chaveAviao(random.nextInt(avioes));
+        }
+
+        /**
+         * modelo;ano;marca do avião da thread, que alterna de ano a cada UPDATE
+         */
+        String proprioAviao() {
+            return modelo + (renomeado ? ";2001;Thread" : ";2000;Thread");
+        }
+    }
+
+    private static void enviar(MessageProcessor processor, String mensagem, Blackhole bh) throws IOException {
+        ResponseSink sink = linha -> bh.consume(linha);
+        processor.processMessage(mensagem, sink);
+    }
+
+    @Benchmark
+    public void insert(Cliente cliente, Blackhole bh) throws IOException {
+        enviar(processor, "INSERT;PASSAGEIRO;" + cliente.cpfNovo() + ";Novo Passageiro;Rua Nova;12A", bh);
+    }
+
+    @Benchmark
+    public void get(Cliente cliente, Blackhole bh) throws IOException {
+        enviar(processor, "GET;PASSAGEIRO;" + cliente.passageiro(), bh);
+    }
+
+    @Benchmark
+    public void update(Cliente cliente, Blackhole bh) throws IOException {
+        enviar(processor, "UPDATE;PASSAGEIRO;" + cliente.passageiro() + ";Nome Alterado;Rua Alterada;7C", bh);
+    }
+
+    /**
+     * DELETE precisa de algo para apagar: insere e apaga um CPF da thread
+     */
+    @Benchmark
+    public void insertEDelete(Cliente cliente, Blackhole bh) throws IOException {
+        String cpf = cliente.cpfNovo();
+        enviar(processor, "INSERT;PASSAGEIRO;" + cpf + ";Temporario;Rua;1A", bh);
+        enviar(processor, "DELETE;PASSAGEIRO;" + cpf, bh);
+    }
+
+    @Benchmark
+    public void getAviao(Cliente cliente, Blackhole bh) throws IOException {
+        enviar(processor, "GET;AVIAO;" + cliente.aviao(), bh);
+    }
+
+    @Benchmark
+    public void updateAviao(Cliente cliente, Blackhole bh) throws IOException {
+        String atual = cliente.proprioAviao();
+        cliente.renomeado = !cliente.renomeado;
+        enviar(processor, "UPDATE;AVIAO;" + atual + ";" + cliente.proprioAviao(), bh);
+    }
+
+    /**
+     * ADD_TRIPULANTE e o REMOVE_TRIPULANTE correspondente, para a tripulação não crescer
+     */
+    @Benchmark
+    public void addERemoveTripulante(Cliente cliente, Blackhole bh) throws IOException {
+        String aviao = cliente.proprioAviao();
+        String cpf = cliente.tripulante();
+        enviar(processor, "ADD_TRIPULANTE;" + aviao + ";" + cpf, bh);
+        enviar(processor, "REMOVE_TRIPULANTE;" + aviao + ";" + cpf, bh);
+    }
+
+    @Benchmark
+    public void listTripulantes(Cliente cliente, Blackhole bh) throws IOException {
+        enviar(processor, "LIST_TRIPULANTES;" + cliente.aviao(), bh);
+    }
+
+    @Benchmark
+    public void findAvioes(Cliente cliente, Blackhole bh) throws IOException {
+        enviar(processor, "FIND_AVIOES;" + cliente.tripulante(), bh);
+    }
+
+    @Benchmark
+    public void listPagina(Blackhole bh) throws IOException {
+        enviar(processor, "LIST;PASSAGEIRO;100", bh);
+    }
+
+    @Benchmark
+    public void batch(Cliente cliente, Blackhole bh) throws IOException {
+        StringBuilder mensagem = new StringBuilder("BATCH;ATOMICO;10");
+        for (int i = 0; i < 10; i++) {
+            mensagem.append('\n').append("UPDATE;PASSAGEIRO;").append(cliente.passageiro())
+                .append(";Nome em Lote;Rua do Lote;").append(i + 1).append('B');
+        }
+        enviar(processor, mensagem.toString(), bh);
+    }
+
+    // listagens completas: o custo cresce com a massa, então medidas por operação
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void listTripulante(Blackhole bh) throws IOException {
+        enviar(processor, "LIST;TRIPULANTE", bh);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void listAll(Blackhole bh) throws IOException {
+        enviar(processor, "LIST;ALL", bh);
+    }
+
+    /**
+     * LIST;ALL com o cache de listagens: sem escritas, toda chamada depois da primeira é
+     * acerto, enquanto a resposta couber em uma entrada (um quarto do limite padrão)
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void listAllCache(Blackhole bh) throws IOException {
+        enviar(processorComCache, "LIST;ALL", bh);
+    }
+}
@@ -0,0 +1,62 @@
+package crud.benchmark;
+
+import crud.model.Pessoa;
+import crud.repository.PessoaRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listagens do PessoaRepository sobre a massa de {@link Dados}: a cópia completa
+ * (usada pelo snapshot) e a de um tipo (usada pelo LIST).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PessoaRepositoryBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int pessoas;
+
+    @Param({"false", "true"})
+    public boolean passageirosCompactos;
+
+    PessoaRepository pessoaRepository;
+
+    @Setup(Level.Trial)
+    public void popular() {
+        pessoaRepository = new PessoaRepository(passageirosCompactos);
+        for (int i = 0; i < pessoas; i++) {
+            pessoaRepository.insert(Dados.pessoa(i));
+        }
+    }
+
+    @Benchmark
+    public List<Pessoa> list() {
+        return pessoaRepository.list();
+    }
+
+    @Benchmark
+    public List<Pessoa> listTripulantes() {
+        return pessoaRepository.listByType("TRIPULANTE");
+    }
+
+    @Benchmark
+    public List<Pessoa> listPassageiros() {
+        return pessoaRepository.listByType("PASSAGEIRO");
+    }
+}
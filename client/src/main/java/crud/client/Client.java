@@ -2,7 +2,15 @@ package crud.client;
 
 import java.io.*;
 import java.net.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Client {
 	 private final String host;
@@ -14,9 +22,33 @@ public class Client {
 	    private PrintWriter out;
 	    private BufferedReader in;
 
+	    /**
+	     * Forma de conversar com o servidor: texto simples, texto com pipeline
+	     * (vários comandos em voo, respostas casadas pelo id) ou frames binários
+	     */
+	    public enum Modo { TEXTO, PIPELINE, BINARIO }
+
+	    private final Modo modo;
+	    private final boolean pipeline;
+	    private final AtomicLong proximoId = new AtomicLong();
+	    private final Map<String, CompletableFuture<String>> pendentes = new ConcurrentHashMap<>();
+	    // marcado pela thread leitora ao sair: nenhuma resposta chega mais
+	    private volatile boolean leitorEncerrado;
+
+	    // Modo binário: codec e streams crus do socket
+	    private final ProtocoloBinario protocoloBinario = new ProtocoloBinario();
+	    private OutputStream saidaBinaria;
+	    private InputStream entradaBinaria;
+
 	    public Client(String host, int port) {
+	        this(host, port, Modo.TEXTO);
+	    }
+
+	    public Client(String host, int port, Modo modo) {
 	        this.host = host;
 	        this.port = port;
+	        this.modo = modo;
+	        this.pipeline = modo == Modo.PIPELINE;
 	        this.scanner = new Scanner(System.in);
 	    }
 
@@ -29,7 +61,80 @@ public class Client {
 	            out = new PrintWriter(socket.getOutputStream(), true);
 	            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
 	            System.out.println("Conectado ao servidor " + host + ":" + port);
+
+	            if (pipeline) {
+	                ativarPipeline();
+	            } else if (modo == Modo.BINARIO) {
+	                ativarBinario();
+	            }
+	        }
+	    }
+
+	    /**
+	     * Negocia o protocolo binário; a partir daqui só frames trafegam no socket
+	     */
+	    private void ativarBinario() throws IOException {
+	        out.println(ProtocoloBinario.HANDSHAKE);
+	        String confirmacao = in.readLine();
+	        String fim = in.readLine();
+	        if (!"BINARIO;OK".equals(confirmacao) || !"<END>".equals(fim)) {
+	            throw new IOException("Servidor não aceitou o protocolo binário: " + confirmacao);
+	        }
+	        saidaBinaria = new BufferedOutputStream(socket.getOutputStream());
+	        entradaBinaria = new BufferedInputStream(socket.getInputStream());
+	    }
+
+	    /**
+	     * Negocia o modo pipeline e inicia a thread que distribui as respostas
+	     */
+	    private void ativarPipeline() throws IOException {
+	        out.println("PIPELINE");
+	        String confirmacao = in.readLine();
+	        String fim = in.readLine();
+	        if (!"PIPELINE;OK".equals(confirmacao) || !"<END>".equals(fim)) {
+	            throw new IOException("Servidor não aceitou o modo pipeline: " + confirmacao);
+	        }
+
+	        Thread leitor = new Thread(this::lerRespostasPipeline, "leitor-pipeline");
+	        leitor.setDaemon(true);
+	        leitor.start();
+	    }
+
+	    /**
+	     * Lê linhas "id:conteudo" e completa o pedido correspondente ao receber "id:<END>"
+	     */
+	    private void lerRespostasPipeline() {
+	        Map<String, StringBuilder> parciais = new HashMap<>();
+	        try {
+	            String line;
+	            while ((line = in.readLine()) != null) {
+	                int separador = line.indexOf(':');
+	                if (separador <= 0) {
+	                    continue;
+	                }
+	                String id = line.substring(0, separador);
+	                String conteudo = line.substring(separador + 1);
+
+	                if ("<END>".equals(conteudo)) {
+	                    StringBuilder response = parciais.remove(id);
+	                    CompletableFuture<String> pendente = pendentes.remove(id);
+	                    if (pendente != null) {
+	                        pendente.complete(response == null ? "" : response.toString().trim());
+	                    }
+	                } else {
+	                    parciais.computeIfAbsent(id, k -> new StringBuilder()).append(conteudo).append("\n");
+	                }
+	            }
+	        } catch (IOException e) {
+	            if (!socket.isClosed()) {
+	                System.err.println("Erro ao ler respostas: " + e.getMessage());
+	            }
 	        }
+	        // conexão encerrada: falha tudo o que ainda estava em voo (e, pelo flag, o que vier depois)
+	        leitorEncerrado = true;
+	        IOException fechada = new IOException("Conexão encerrada pelo servidor");
+	        pendentes.values().forEach(p -> p.completeExceptionally(fechada));
+	        pendentes.clear();
 	    }
 
 	    /**
@@ -37,8 +142,12 @@ public class Client {
 	     */
 	    private void desconectar() {
 	        try {
-	            if (out != null) {
-	                out.println("QUIT"); // Sinal para o servidor encerrar
+	            if (saidaBinaria != null) {
+	                saidaBinaria.write(protocoloBinario.codificar("QUIT"));
+	                saidaBinaria.flush();
+	            } else if (out != null) {
+	                // Sinal para o servidor encerrar
+	                out.println(pipeline ? proximoId.incrementAndGet() + ":QUIT" : "QUIT");
 	            }
 	            if (in != null) {
 	                in.close();
@@ -60,6 +169,23 @@ public class Client {
 	     */
 	    private String sendMessage(String message) throws IOException {
 	        conectar(); // Garante que está conectado
+
+	        if (pipeline) {
+	            try {
+	                return sendMessageAsync(message).get();
+	            } catch (InterruptedException e) {
+	                Thread.currentThread().interrupt();
+	                throw new IOException("Envio interrompido", e);
+	            } catch (ExecutionException e) {
+	                throw new IOException(e.getCause().getMessage(), e.getCause());
+	            }
+	        }
+
+	        if (modo == Modo.BINARIO) {
+	            saidaBinaria.write(protocoloBinario.codificar(message));
+	            saidaBinaria.flush();
+	            return protocoloBinario.lerResposta(entradaBinaria);
+	        }
 	        
 	        // Envia mensagem
 	        out.println(message);
@@ -75,6 +201,29 @@ public class Client {
 	        return response.toString().trim();
 	    }
 
+	    /**
+	     * Modo pipeline: envia o comando sem esperar a resposta dos anteriores.
+	     * O future é completado pela thread leitora quando chegar "id:<END>".
+	     */
+	    public CompletableFuture<String> sendMessageAsync(String message) throws IOException {
+	        if (!pipeline) {
+	            throw new IllegalStateException("Cliente não está no modo pipeline");
+	        }
+	        conectar();
+
+	        String id = Long.toString(proximoId.incrementAndGet());
+	        CompletableFuture<String> resposta = new CompletableFuture<>();
+	        pendentes.put(id, resposta);
+	        // linhas extras (sub-comandos de BATCH) também levam o id
+	        out.println(id + ":" + message.replace("\n", "\n" + id + ":"));
+	        // o PrintWriter engole erros de escrita; e, com a leitora encerrada, ninguém completaria o pedido
+	        if (out.checkError() || leitorEncerrado) {
+	            pendentes.remove(id);
+	            resposta.completeExceptionally(new IOException("Conexão encerrada pelo servidor"));
+	        }
+	        return resposta;
+	    }
+
 
     /**
      * Exibe o menu principal
@@ -132,7 +281,8 @@ public class Client {
         System.out.println("1. Adicionar tripulante ao avião");
         System.out.println("2. Remover tripulante do avião");
         System.out.println("3. Listar tripulantes do avião");
-        System.out.println("4. Voltar");
+        System.out.println("4. Buscar aviões de uma pessoa");
+        System.out.println("5. Voltar");
         System.out.println("============================");
         System.out.print("Escolha uma opção: ");
     }
@@ -496,7 +646,8 @@ public class Client {
                 case "1": addTripulanteToAviao(); break;
                 case "2": removeTripulanteFromAviao(); break;
                 case "3": listTripulantesAviao(); break;
-                case "4": return;
+                case "4": findAvioesPessoa(); break;
+                case "5": return;
                 default: System.out.println("❌ Opção inválida");
             }
             pause();
@@ -555,6 +706,18 @@ public class Client {
         }
     }
 
+    private void findAvioesPessoa() {
+        System.out.println("\n--- Buscar Aviões de uma Pessoa ---");
+        String cpf = readInput("CPF: ");
+
+        try {
+            String response = sendMessage("FIND_AVIOES;" + cpf);
+            displayAviaoList(response);
+        } catch (IOException e) {
+            System.err.println("❌ Erro ao buscar aviões: " + e.getMessage());
+        }
+    }
+
     // ========== RELATÓRIOS GERAIS ==========
     private void handleRelatorios() {
         System.out.println("\n--- Relatórios Gerais ---");
@@ -810,20 +973,33 @@ public class Client {
     public static void main(String[] args) {
         String host = "10.15.120.175";
         int port = 8080;
+        Modo modo = Modo.TEXTO;
+
+        // Opções (--pipeline, --binario) podem vir em qualquer posição; o restante é host e porta
+        List<String> posicionais = new ArrayList<>();
+        for (String arg : args) {
+            if ("--pipeline".equals(arg)) {
+                modo = Modo.PIPELINE;
+            } else if ("--binario".equals(arg)) {
+                modo = Modo.BINARIO;
+            } else {
+                posicionais.add(arg);
+            }
+        }
 
         // Permite especificar host e porta via argumentos
-        if (args.length > 0) {
-            host = args[0];
+        if (posicionais.size() > 0) {
+            host = posicionais.get(0);
         }
-        if (args.length > 1) {
+        if (posicionais.size() > 1) {
             try {
-                port = Integer.parseInt(args[1]);
+                port = Integer.parseInt(posicionais.get(1));
             } catch (NumberFormatException e) {
                 System.err.println("Porta inválida. Usando porta padrão: " + port);
             }
         }
 
-        Client client = new Client(host, port);
+        Client client = new Client(host, port, modo);
         client.start();
     }
 }
\ No newline at end of file
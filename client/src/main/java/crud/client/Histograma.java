@@ -0,0 +1,95 @@
+package crud.client;
+
+import java.io.PrintWriter;
+
+/**
+ * Histograma de latências em nanossegundos com faixas logarítmicas: valores até
+ * 127 são exatos e, acima disso, cada potência de 2 é dividida em 64 faixas, então
+ * o erro de um percentil fica abaixo de 1,6%. Tamanho fixo (cerca de 30 KB),
+ * qualquer valor de long cabe. Não é thread-safe: cada conexão usa o seu e eles
+ * são somados no final.
+ */
+final class Histograma {
+    private static final int SUB = 64;
+    private static final int FAIXAS = SUB * 58;
+
+    private final long[] contagens = new long[FAIXAS];
+    private long total;
+    private long maximo;
+
+    void registrar(long nanos) {
+        long valor = Math.max(0, nanos);
+        contagens[indice(valor)]++;
+        total++;
+        maximo = Math.max(maximo, valor);
+    }
+
+    void somar(Histograma outro) {
+        for (int i = 0; i < FAIXAS; i++) {
+            contagens[i] += outro.contagens[i];
+        }
+        total += outro.total;
+        maximo = Math.max(maximo, outro.maximo);
+    }
+
+    long total() {
+        return total;
+    }
+
+    long maximo() {
+        return maximo;
+    }
+
+    /**
+     * Menor valor (limite superior da faixa) com pelo menos p% das amostras até ele
+     */
+    long percentil(double p) {
+        if (total == 0) {
+            return 0;
+        }
+        long alvo = Math.max(1, (long) Math.ceil(p / 100 * total));
+        long acumulado = 0;
+        for (int i = 0; i < FAIXAS; i++) {
+            acumulado += contagens[i];
+            if (acumulado >= alvo) {
+                return Math.min(limite(i), maximo);
+            }
+        }
+        return maximo;
+    }
+
+    /**
+     * Uma linha por faixa com amostras: valor, percentil e contagem acumulada.
+     * Valores divididos por 'unidade' (ex.: 1e6 para milissegundos).
+     */
+    void distribuicao(PrintWriter out, double unidade) {
+        out.printf("%14s %12s %12s%n", "Valor", "Percentil", "Acumulado");
+        long acumulado = 0;
+        for (int i = 0; i < FAIXAS; i++) {
+            if (contagens[i] == 0) {
+                continue;
+            }
+            acumulado += contagens[i];
+            out.printf("%14.3f %12.6f %12d%n", Math.min(limite(i), maximo) / unidade,
+                    100.0 * acumulado / total, acumulado);
+        }
+    }
+
+    private static int indice(long valor) {
+        if (valor < 2 * SUB) {
+            return (int) valor;
+        }
+        // valor em [2^m, 2^(m+1)): os 7 bits mais altos escolhem a faixa
+        int deslocamento = 63 - Long.numberOfLeadingZeros(valor) - 6;
+        return SUB * deslocamento + (int) (valor >>> deslocamento);
+    }
+
+    private static long limite(int indice) {
+        if (indice < 2 * SUB) {
+            return indice;
+        }
+        int deslocamento = indice / SUB - 1;
+        long mantissa = indice - (long) SUB * deslocamento;
+        return ((mantissa + 1) << deslocamento) - 1;
+    }
+}
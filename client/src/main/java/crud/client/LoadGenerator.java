@@ -0,0 +1,570 @@
+package crud.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Gerador de carga sem interface: abre N conexões com o servidor e repete uma
+ * mistura configurável de INSERT, GET, UPDATE, LIST e ADD_TRIPULANTE, uma
+ * mensagem em voo por conexão.
+ *
+ * <p>Em malha fechada cada conexão envia o próximo comando assim que recebe a
+ * resposta do anterior, e a latência é o tempo de resposta. Em malha aberta
+ * (--taxa) os comandos têm horário marcado, espalhados entre as conexões; se o
+ * servidor atrasar, a conexão envia os atrasados em seguida e a latência conta
+ * desde o horário previsto, não desde o envio. Sem isso, uma pausa do servidor
+ * apareceria como uma única amostra lenta em vez de todas as que deveriam ter
+ * sido enviadas durante ela (omissão coordenada). Os que nem chegam a sair antes
+ * do fim da medição entram na latência com a espera até o fim. O tempo de serviço
+ * (desde o envio) é mostrado à parte.
+ */
+public class LoadGenerator {
+    enum Operacao { INSERT, GET, UPDATE, LIST, ADD_TRIPULANTE }
+
+    private static final String MIX_PADRAO = "INSERT:10,GET:50,UPDATE:25,LIST:5,ADD_TRIPULANTE:10";
+    private static final String LIST_PADRAO = "LIST;PASSAGEIRO;100";
+    private static final int TRIPULANTE_A_CADA = 10;
+    private static final long BASE_CPF = 70_000_000_000L;
+    private static final double[] PERCENTIS = {50, 90, 99, 99.9};
+
+    private final String host;
+    private final int port;
+    private final int conexoes;
+    private final long duracaoNs;
+    private final long aquecimentoNs;
+    // comandos por segundo somando todas as conexões; 0 = malha fechada
+    private final double taxa;
+    private final int[] pesos;
+    private final int chaves;
+    private final int avioes;
+    private final String comandoList;
+    private final boolean binario;
+
+    LoadGenerator(String host, int port, int conexoes, long duracaoNs, long aquecimentoNs, double taxa,
+                  int[] pesos, int chaves, int avioes, String comandoList, boolean binario) {
+        this.host = host;
+        this.port = port;
+        this.conexoes = conexoes;
+        this.duracaoNs = duracaoNs;
+        this.aquecimentoNs = aquecimentoNs;
+        this.taxa = taxa;
+        this.pesos = pesos;
+        this.chaves = chaves;
+        this.avioes = avioes;
+        this.comandoList = comandoList;
+        this.binario = binario;
+    }
+
+    /**
+     * Resultado somado das conexões
+     */
+    static final class Resultado {
+        // desde o horário previsto (malha aberta) ou desde o envio (malha fechada)
+        final Map<Operacao, Histograma> latencia = new EnumMap<>(Operacao.class);
+        // desde o envio; só difere da latência em malha aberta
+        final Map<Operacao, Histograma> servico = new EnumMap<>(Operacao.class);
+        long respostasDeErro;
+        long naoEnviados;
+        int falhas;
+
+        Resultado() {
+            for (Operacao operacao : Operacao.values()) {
+                latencia.put(operacao, new Histograma());
+                servico.put(operacao, new Histograma());
+            }
+        }
+
+        void somar(Resultado outro) {
+            for (Operacao operacao : Operacao.values()) {
+                latencia.get(operacao).somar(outro.latencia.get(operacao));
+                servico.get(operacao).somar(outro.servico.get(operacao));
+            }
+            respostasDeErro += outro.respostasDeErro;
+            naoEnviados += outro.naoEnviados;
+            falhas += outro.falhas;
+        }
+
+        static Histograma todas(Map<Operacao, Histograma> porOperacao) {
+            Histograma soma = new Histograma();
+            porOperacao.values().forEach(soma::somar);
+            return soma;
+        }
+    }
+
+    /**
+     * Uma conexão com o servidor, usada por uma única thread
+     */
+    private final class Conexao implements AutoCloseable {
+        private final Socket socket;
+        private final SplittableRandom random;
+        private Writer out;
+        private BufferedReader in;
+        private ProtocoloBinario protocoloBinario;
+        private OutputStream saidaBinaria;
+        private InputStream entradaBinaria;
+        private final StringBuilder resposta = new StringBuilder();
+
+        Conexao(SplittableRandom random) throws IOException {
+            this.random = random;
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            if (binario) {
+                String confirmacao = enviar(ProtocoloBinario.HANDSHAKE);
+                if (!"BINARIO;OK".equals(confirmacao)) {
+                    throw new IOException("Servidor não aceitou o protocolo binário: " + confirmacao);
+                }
+                protocoloBinario = new ProtocoloBinario();
+                saidaBinaria = new BufferedOutputStream(socket.getOutputStream());
+                entradaBinaria = new BufferedInputStream(socket.getInputStream());
+            }
+        }
+
+        /**
+         * Envia a mensagem e espera a resposta inteira (até "<END>")
+         */
+        String enviar(String mensagem) throws IOException {
+            if (protocoloBinario != null) {
+                saidaBinaria.write(protocoloBinario.codificar(mensagem));
+                saidaBinaria.flush();
+                return protocoloBinario.lerResposta(entradaBinaria);
+            }
+            out.write(mensagem);
+            out.write('\n');
+            out.flush();
+            resposta.setLength(0);
+            String linha;
+            while ((linha = in.readLine()) != null && !"<END>".equals(linha)) {
+                if (resposta.length() > 0) {
+                    resposta.append('\n');
+                }
+                resposta.append(linha);
+            }
+            if (linha == null) {
+                throw new IOException("Conexão encerrada pelo servidor");
+            }
+            return resposta.toString();
+        }
+
+        /**
+         * Carga inicial: as pessoas e aviões cujo índice cai nesta conexão
+         */
+        void popular(int indice) throws IOException {
+            for (int i = indice; i < chaves; i += conexoes) {
+                enviar(insert(i));
+            }
+            for (int i = indice; i < avioes; i += conexoes) {
+                enviar("INSERT;AVIAO;" + aviao(i));
+            }
+        }
+
+        /**
+         * Executa até o fim da medição. Com intervalo > 0, o k-ésimo comando é
+         * previsto para primeiro + k * intervalo.
+         */
+        Resultado executar(long inicioMedicao, long fim, long primeiro, long intervalo) {
+            Resultado resultado = new Resultado();
+            long previsto = primeiro;
+            try {
+                while (true) {
+                    long agora = System.nanoTime();
+                    if (intervalo > 0) {
+                        if (previsto >= fim) {
+                            break;
+                        }
+                        if (agora >= fim) {
+                            // atrasada demais: o que ainda estava previsto não chega a sair, mas
+                            // esperou até o fim e entra na latência com essa espera
+                            for (long pendente = previsto; pendente < fim; pendente += intervalo) {
+                                if (pendente >= inicioMedicao) {
+                                    resultado.latencia.get(sortear()).registrar(fim - pendente);
+                                    resultado.naoEnviados++;
+                                }
+                            }
+                            break;
+                        }
+                        while (agora < previsto) {
+                            LockSupport.parkNanos(previsto - agora);
+                            agora = System.nanoTime();
+                        }
+                    } else {
+                        if (agora >= fim) {
+                            break;
+                        }
+                        previsto = agora;
+                    }
+
+                    Operacao operacao = sortear();
+                    String mensagem = comando(operacao);
+                    long envio = System.nanoTime();
+                    String resposta = enviar(mensagem);
+                    long concluido = System.nanoTime();
+
+                    if (previsto >= inicioMedicao) {
+                        resultado.latencia.get(operacao).registrar(concluido - previsto);
+                        resultado.servico.get(operacao).registrar(concluido - envio);
+                        if (resposta.startsWith("Erro")) {
+                            resultado.respostasDeErro++;
+                        }
+                    }
+                    previsto += intervalo;
+                }
+            } catch (IOException e) {
+                System.err.println("Erro na conexão: " + e.getMessage());
+                resultado.falhas++;
+            }
+            return resultado;
+        }
+
+        private Operacao sortear() {
+            int sorteio = random.nextInt(pesos[pesos.length - 1]);
+            for (int i = 0; i < pesos.length; i++) {
+                if (sorteio < pesos[i]) {
+                    return Operacao.values()[i];
+                }
+            }
+            throw new IllegalStateException("Mistura de comandos vazia");
+        }
+
+        private String comando(Operacao operacao) {
+            int i = random.nextInt(chaves);
+            return switch (operacao) {
+                case INSERT -> insert(i);
+                case GET -> "GET;" + tipo(i) + ";" + cpf(i);
+                case UPDATE -> isTripulante(i)
+                        ? "UPDATE;TRIPULANTE;" + cpf(i) + ";Alterado " + i + ";Rua " + i + ";6000;Copiloto"
+                        : "UPDATE;PASSAGEIRO;" + cpf(i) + ";Alterado " + i + ";Rua " + i + ";" + (i % 30 + 1) + "C";
+                case LIST -> comandoList;
+                case ADD_TRIPULANTE -> "ADD_TRIPULANTE;" + aviao(random.nextInt(avioes)) + ";"
+                        + cpf(i - i % TRIPULANTE_A_CADA);
+            };
+        }
+
+        @Override
+        public void close() {
+            try {
+                if (protocoloBinario != null) {
+                    saidaBinaria.write(protocoloBinario.codificar("QUIT"));
+                    saidaBinaria.flush();
+                } else {
+                    out.write("QUIT\n");
+                    out.flush();
+                }
+                socket.close();
+            } catch (IOException e) {
+                // já estava fechada
+            }
+        }
+    }
+
+    // Massa: pessoas 0..chaves-1, um tripulante a cada dez, e aviões 0..avioes-1
+
+    private static boolean isTripulante(int i) {
+        return i % TRIPULANTE_A_CADA == 0;
+    }
+
+    private static String tipo(int i) {
+        return isTripulante(i) ? "TRIPULANTE" : "PASSAGEIRO";
+    }
+
+    private static String cpf(int i) {
+        return Long.toString(BASE_CPF + i);
+    }
+
+    private static String insert(int i) {
+        if (isTripulante(i)) {
+            return "INSERT;TRIPULANTE;" + cpf(i) + ";Carga " + i + ";Rua " + i + ";5000;Piloto";
+        }
+        return "INSERT;PASSAGEIRO;" + cpf(i) + ";Carga " + i + ";Rua " + i + ";" + (i % 30 + 1) + "A";
+    }
+
+    /**
+     * modelo;ano;marca do i-ésimo avião
+     */
+    private static String aviao(int i) {
+        return "Carga" + i + ";2020;LoadGen";
+    }
+
+    /**
+     * Abre as conexões, faz a carga inicial (se pedida) e mede
+     */
+    Resultado executar(boolean cargaInicial) throws Exception {
+        List<Conexao> abertas = new ArrayList<>();
+        SplittableRandom semente = new SplittableRandom();
+        try {
+            for (int c = 0; c < conexoes; c++) {
+                abertas.add(new Conexao(semente.split()));
+            }
+
+            if (cargaInicial) {
+                long inicio = System.nanoTime();
+                emParalelo(abertas, (conexao, c) -> {
+                    conexao.popular(c);
+                    return null;
+                });
+                System.out.printf("Carga inicial: %d pessoas e %d aviões em %.1f s%n",
+                        chaves, avioes, (System.nanoTime() - inicio) / 1e9);
+            }
+
+            long inicio = System.nanoTime() + 10_000_000; // folga para todas as threads partirem juntas
+            long inicioMedicao = inicio + aquecimentoNs;
+            long fim = inicioMedicao + duracaoNs;
+            long intervalo = taxa > 0 ? Math.max(1, Math.round(conexoes * 1e9 / taxa)) : 0;
+            List<Resultado> parciais = emParalelo(abertas, (conexao, c) ->
+                    // a primeira de cada conexão deslocada, para não saírem todas no mesmo instante
+                    conexao.executar(inicioMedicao, fim, inicio + intervalo * c / conexoes, intervalo));
+
+            Resultado total = new Resultado();
+            parciais.forEach(total::somar);
+            return total;
+        } finally {
+            abertas.forEach(Conexao::close);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Tarefa<T> {
+        T executar(Conexao conexao, int indice) throws Exception;
+    }
+
+    /**
+     * Uma virtual thread por conexão; espera todas e devolve os resultados na ordem
+     */
+    private static <T> List<T> emParalelo(List<Conexao> conexoes, Tarefa<T> tarefa) throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        List<T> resultados = new ArrayList<>();
+        Exception[] erro = new Exception[1];
+        for (int c = 0; c < conexoes.size(); c++) {
+            resultados.add(null);
+            int indice = c;
+            threads.add(Thread.ofVirtual().start(() -> {
+                try {
+                    T resultado = tarefa.executar(conexoes.get(indice), indice);
+                    synchronized (resultados) {
+                        resultados.set(indice, resultado);
+                    }
+                } catch (Exception e) {
+                    synchronized (resultados) {
+                        erro[0] = e;
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        synchronized (resultados) {
+            if (erro[0] != null) {
+                throw erro[0];
+            }
+            return resultados;
+        }
+    }
+
+    void relatar(Resultado resultado, PrintWriter out) {
+        // a latência também conta os previstos não enviados; o serviço, só os concluídos
+        Histograma todas = Resultado.todas(resultado.servico);
+        double segundos = duracaoNs / 1e9;
+        out.printf("%s, %d conexão(ões), %.0f s medidos após %.0f s de aquecimento%n",
+                taxa > 0 ? String.format("Malha aberta a %.0f comandos/s", taxa) : "Malha fechada",
+                conexoes, segundos, aquecimentoNs / 1e9);
+        out.printf("Concluídos: %d (%.1f comandos/s), respostas de erro: %d, conexões com falha: %d%n",
+                todas.total(), todas.total() / segundos, resultado.respostasDeErro, resultado.falhas);
+        if (resultado.naoEnviados > 0) {
+            out.printf("ATENÇÃO: %d comandos previstos não chegaram a ser enviados (o servidor não acompanhou a taxa)%n",
+                    resultado.naoEnviados);
+        }
+        out.println();
+        if (taxa > 0) {
+            tabela(out, "Latência corrigida, desde o horário previsto (ms)", resultado.latencia);
+            out.println();
+            tabela(out, "Tempo de serviço, desde o envio (ms)", resultado.servico);
+        } else {
+            tabela(out, "Tempo de resposta (ms)", resultado.latencia);
+        }
+        out.flush();
+    }
+
+    private static void tabela(PrintWriter out, String titulo, Map<Operacao, Histograma> porOperacao) {
+        out.println(titulo);
+        out.printf("%-15s %10s", "operação", "total");
+        for (double p : PERCENTIS) {
+            out.printf(" %9s", "p" + (p == Math.floor(p) ? String.valueOf((int) p) : String.valueOf(p)));
+        }
+        out.printf(" %9s%n", "max");
+        linha(out, "TODAS", Resultado.todas(porOperacao));
+        for (Map.Entry<Operacao, Histograma> entrada : porOperacao.entrySet()) {
+            if (entrada.getValue().total() > 0) {
+                linha(out, entrada.getKey().name(), entrada.getValue());
+            }
+        }
+    }
+
+    private static void linha(PrintWriter out, String nome, Histograma histograma) {
+        out.printf("%-15s %10d", nome, histograma.total());
+        for (double p : PERCENTIS) {
+            out.printf(" %9.3f", histograma.percentil(p) / 1e6);
+        }
+        out.printf(" %9.3f%n", histograma.maximo() / 1e6);
+    }
+
+    /**
+     * Pesos acumulados na ordem de Operacao, a partir de "INSERT:10,GET:50,..."
+     * (operações omitidas ficam com peso 0)
+     */
+    static int[] lerMix(String mix) {
+        int[] pesos = new int[Operacao.values().length];
+        for (String parte : mix.split(",")) {
+            String[] campos = parte.trim().split(":");
+            if (campos.length != 2) {
+                throw new IllegalArgumentException("Item da mistura inválido: " + parte + " (use OPERACAO:peso)");
+            }
+            Operacao operacao = Operacao.valueOf(campos[0].trim().toUpperCase());
+            int peso = Integer.parseInt(campos[1].trim());
+            if (peso < 0) {
+                throw new IllegalArgumentException("Peso negativo para " + operacao);
+            }
+            pesos[operacao.ordinal()] = peso;
+        }
+        for (int i = 1; i < pesos.length; i++) {
+            pesos[i] += pesos[i - 1];
+        }
+        if (pesos[pesos.length - 1] == 0) {
+            throw new IllegalArgumentException("A mistura precisa de pelo menos uma operação com peso");
+        }
+        return pesos;
+    }
+
+    /**
+     * Uso: LoadGenerator [host] [porta] [--conexoes=N] [--duracao=s] [--aquecimento=s]
+     *                    [--taxa=comandos/s] [--mix=INSERT:10,GET:50,UPDATE:25,LIST:5,ADD_TRIPULANTE:10]
+     *                    [--chaves=N] [--avioes=N] [--list=comando] [--binario]
+     *                    [--sem-carga-inicial] [--histograma=arquivo]
+     *
+     * <p>Sem --taxa (ou com 0) roda em malha fechada. --chaves é o número de
+     * pessoas usadas pelos comandos; a carga inicial as insere antes da medição,
+     * junto com os aviões. --histograma grava a distribuição completa da latência.
+     */
+    public static void main(String[] args) {
+        String host = "localhost";
+        int port = 8080;
+        int conexoes = 16;
+        double duracao = 30;
+        double aquecimento = 5;
+        double taxa = 0;
+        String mix = MIX_PADRAO;
+        int chaves = 100_000;
+        int avioes = 100;
+        String comandoList = LIST_PADRAO;
+        boolean binario = false;
+        boolean cargaInicial = true;
+        String histograma = null;
+
+        List<String> posicionais = new ArrayList<>();
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--conexoes=")) {
+                    conexoes = Integer.parseInt(arg.substring("--conexoes=".length()));
+                } else if (arg.startsWith("--duracao=")) {
+                    duracao = Double.parseDouble(arg.substring("--duracao=".length()));
+                } else if (arg.startsWith("--aquecimento=")) {
+                    aquecimento = Double.parseDouble(arg.substring("--aquecimento=".length()));
+                } else if (arg.startsWith("--taxa=")) {
+                    taxa = Double.parseDouble(arg.substring("--taxa=".length()));
+                } else if (arg.startsWith("--mix=")) {
+                    mix = arg.substring("--mix=".length());
+                } else if (arg.startsWith("--chaves=")) {
+                    chaves = Integer.parseInt(arg.substring("--chaves=".length()));
+                } else if (arg.startsWith("--avioes=")) {
+                    avioes = Integer.parseInt(arg.substring("--avioes=".length()));
+                } else if (arg.startsWith("--list=")) {
+                    comandoList = arg.substring("--list=".length());
+                } else if (arg.equals("--binario")) {
+                    binario = true;
+                } else if (arg.equals("--sem-carga-inicial")) {
+                    cargaInicial = false;
+                } else if (arg.startsWith("--histograma=")) {
+                    histograma = arg.substring("--histograma=".length());
+                } else if (arg.startsWith("--")) {
+                    System.err.println("Opção desconhecida: " + arg);
+                    return;
+                } else {
+                    posicionais.add(arg);
+                }
+            }
+            if (posicionais.size() > 2) {
+                System.err.println("Muitos argumentos!");
+                return;
+            }
+            if (posicionais.size() > 0) {
+                host = posicionais.get(0);
+            }
+            if (posicionais.size() > 1) {
+                port = Integer.parseInt(posicionais.get(1));
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Valor numérico inválido: " + e.getMessage());
+            return;
+        }
+
+        if (conexoes < 1) {
+            System.err.println("Número de conexões deve ser pelo menos 1!");
+            return;
+        }
+        if (duracao <= 0 || aquecimento < 0) {
+            System.err.println("Duração deve ser positiva e aquecimento não pode ser negativo!");
+            return;
+        }
+        if (taxa < 0) {
+            System.err.println("Taxa não pode ser negativa (0 = malha fechada)!");
+            return;
+        }
+        if (chaves < TRIPULANTE_A_CADA || avioes < 1) {
+            System.err.println("Use pelo menos " + TRIPULANTE_A_CADA + " chaves e 1 avião!");
+            return;
+        }
+        int[] pesos;
+        try {
+            pesos = lerMix(mix);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Mistura inválida: " + e.getMessage());
+            return;
+        }
+
+        LoadGenerator gerador = new LoadGenerator(host, port, conexoes, (long) (duracao * 1e9),
+                (long) (aquecimento * 1e9), taxa, pesos, chaves, avioes, comandoList, binario);
+        try {
+            Resultado resultado = gerador.executar(cargaInicial);
+            PrintWriter out = new PrintWriter(System.out);
+            gerador.relatar(resultado, out);
+            if (histograma != null) {
+                try (PrintWriter arquivo = new PrintWriter(Files.newBufferedWriter(Paths.get(histograma)))) {
+                    Resultado.todas(resultado.latencia).distribuicao(arquivo, 1e6);
+                }
+                System.out.println("Distribuição da latência (ms) gravada em " + histograma);
+            }
+        } catch (Exception e) {
+            System.err.println("Erro ao gerar carga: " + e.getMessage());
+        }
+    }
+}
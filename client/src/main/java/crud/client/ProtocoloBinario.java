@@ -0,0 +1,207 @@
+package crud.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Codec do lado cliente para o protocolo binário do servidor (ver
+ * {@code crud.server.ProtocoloBinario}; os códigos precisam ficar em sincronia).
+ * Converte a mesma mensagem texto usada pelo menu em um frame com opcode,
+ * campos com prefixo de tamanho e anos como varint.
+ */
+final class ProtocoloBinario {
+    static final String HANDSHAKE = "BINARIO";
+
+    private static final int OP_TEXTO = 0;
+    private static final int OP_BATCH = 9;
+    private static final int OP_QUIT = 0x7F;
+
+    private static final String[] OPERACOES = {
+            null, "INSERT", "UPDATE", "GET", "DELETE", "LIST",
+            "ADD_TRIPULANTE", "REMOVE_TRIPULANTE", "LIST_TRIPULANTES", "BATCH", "FIND_AVIOES"
+    };
+    private static final String[] TIPOS = {null, "TRIPULANTE", "PASSAGEIRO", "AVIAO", "ALL"};
+
+    private static final int CAMPO_TEXTO = 0;
+    private static final int CAMPO_INTEIRO = 1;
+
+    private static final int FLAG_FINAL = 0;
+
+    private final ByteArrayOutputStream corpo = new ByteArrayOutputStream(256);
+    private final ByteArrayOutputStream frame = new ByteArrayOutputStream(256);
+
+    /**
+     * Monta o frame (com prefixo de tamanho) para uma mensagem no formato texto.
+     * Operações desconhecidas seguem como texto dentro de um frame OP_TEXTO.
+     */
+    byte[] codificar(String mensagem) throws IOException {
+        corpo.reset();
+        String texto = mensagem.trim();
+
+        if ("QUIT".equalsIgnoreCase(texto)) {
+            corpo.write(OP_QUIT);
+            corpo.write(0);
+            escreverVarint(corpo, 0);
+            return fechar();
+        }
+
+        String[] linhas = texto.split("\n");
+        String[] fields = linhas[0].trim().split(";");
+        int opcode = indice(OPERACOES, fields[0]);
+
+        if (opcode == OP_BATCH && fields.length >= 2) {
+            // BATCH;modo;N + linhas => campos: modo, sub-comandos
+            corpo.write(OP_BATCH);
+            corpo.write(0);
+            escreverVarint(corpo, linhas.length);
+            escreverTexto(fields[1]);
+            for (int i = 1; i < linhas.length; i++) {
+                escreverTexto(linhas[i].trim());
+            }
+            return fechar();
+        }
+
+        // ADD_TRIPULANTE, REMOVE_TRIPULANTE, LIST_TRIPULANTES e FIND_AVIOES não têm o campo tipo
+        boolean semTipo = opcode > 0 && OPERACOES[opcode].endsWith("_TRIPULANTE")
+                || opcode > 0 && OPERACOES[opcode].equals("LIST_TRIPULANTES")
+                || opcode > 0 && OPERACOES[opcode].equals("FIND_AVIOES");
+        int tipo = semTipo ? 0 : (fields.length > 1 ? indice(TIPOS, fields[1]) : -1);
+        if (opcode <= 0 || opcode == OP_BATCH || tipo < 0 || linhas.length > 1) {
+            corpo.write(OP_TEXTO);
+            corpo.write(0);
+            escreverVarint(corpo, 1);
+            escreverTexto(texto);
+            return fechar();
+        }
+
+        int inicio = semTipo ? 1 : 2;
+        corpo.write(opcode);
+        corpo.write(tipo);
+        escreverVarint(corpo, fields.length - inicio);
+        for (int i = inicio; i < fields.length; i++) {
+            if (isAno(opcode, tipo, i) && escreverInteiro(fields[i])) {
+                continue;
+            }
+            escreverTexto(fields[i]);
+        }
+        return fechar();
+    }
+
+    /**
+     * Lê frames de resposta até o final e devolve as linhas unidas por \n,
+     * no mesmo formato que o modo texto produz.
+     */
+    String lerResposta(InputStream in) throws IOException {
+        StringBuilder response = new StringBuilder();
+        int flag;
+        do {
+            int tamanho = lerVarint(in);
+            byte[] dados = in.readNBytes(tamanho);
+            if (dados.length < tamanho) {
+                throw new EOFException("Conexão encerrada no meio de uma resposta");
+            }
+            int[] posicao = {1};
+            flag = dados[0];
+            int linhas = lerVarint(dados, posicao);
+            for (int i = 0; i < linhas; i++) {
+                int n = lerVarint(dados, posicao);
+                response.append(new String(dados, posicao[0], n, StandardCharsets.UTF_8)).append("\n");
+                posicao[0] += n;
+            }
+        } while (flag != FLAG_FINAL);
+        return response.toString().trim();
+    }
+
+    /**
+     * Posições (na mensagem texto) que carregam anoFabricacao
+     */
+    private static boolean isAno(int opcode, int tipo, int posicao) {
+        if (tipo == 0) {
+            return posicao == 2; // OPERACAO;modelo;ano;marca...
+        }
+        if (!"AVIAO".equals(TIPOS[tipo]) || "LIST".equals(OPERACOES[opcode])) {
+            return false; // LIST;AVIAO;limite;cursor não tem ano
+        }
+        return posicao == 3 || ("UPDATE".equals(OPERACOES[opcode]) && posicao == 6);
+    }
+
+    private static int indice(String[] nomes, String nome) {
+        for (int i = 1; i < nomes.length; i++) {
+            if (nomes[i].equalsIgnoreCase(nome.trim())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private byte[] fechar() throws IOException {
+        frame.reset();
+        escreverVarint(frame, corpo.size());
+        corpo.writeTo(frame);
+        return frame.toByteArray();
+    }
+
+    private void escreverTexto(String valor) throws IOException {
+        byte[] bytes = valor.getBytes(StandardCharsets.UTF_8);
+        corpo.write(CAMPO_TEXTO);
+        escreverVarint(corpo, bytes.length);
+        corpo.write(bytes);
+    }
+
+    /**
+     * Escreve o campo como inteiro zigzag; se não for número, o servidor
+     * recebe o texto e responde com a mesma validação do modo texto
+     */
+    private boolean escreverInteiro(String valor) {
+        int numero;
+        try {
+            numero = Integer.parseInt(valor);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        corpo.write(CAMPO_INTEIRO);
+        escreverVarint(corpo, (numero << 1) ^ (numero >> 31));
+        return true;
+    }
+
+    private static void escreverVarint(ByteArrayOutputStream out, int valor) {
+        while ((valor & ~0x7F) != 0) {
+            out.write((valor & 0x7F) | 0x80);
+            valor >>>= 7;
+        }
+        out.write(valor);
+    }
+
+    private static int lerVarint(InputStream in) throws IOException {
+        int valor = 0;
+        for (int deslocamento = 0; deslocamento < 35; deslocamento += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Conexão encerrada pelo servidor");
+            }
+            valor |= (b & 0x7F) << deslocamento;
+            if ((b & 0x80) == 0) {
+                return valor;
+            }
+        }
+        throw new IOException("Varint inválido");
+    }
+
+    private static int lerVarint(byte[] dados, int[] posicao) throws IOException {
+        int valor = 0;
+        for (int deslocamento = 0; deslocamento < 35; deslocamento += 7) {
+            if (posicao[0] >= dados.length) {
+                throw new EOFException("Resposta truncada");
+            }
+            int b = dados[posicao[0]++];
+            valor |= (b & 0x7F) << deslocamento;
+            if ((b & 0x80) == 0) {
+                return valor;
+            }
+        }
+        throw new IOException("Varint inválido");
+    }
+}
@@ -1,81 +1,149 @@
 package crud.model;
 
 public class Aviao {
-    private String modelo;
-    private int anoFabricacao;
-    private String marca;
-    private java.util.ArrayList<Pessoa> tripulantes;
+    /**
+     * Modelo, ano e marca. Trocados juntos por {@link #renomear}, então um leitor
+     * nunca vê o modelo novo com a marca antiga.
+     */
+    public record Identificacao(String modelo, int anoFabricacao, String marca) {
+    }
+
+    private volatile Identificacao identificacao;
+    // Tripulação por CPF, na ordem de inclusão; protegida pelo lock do avião
+    private final java.util.LinkedHashMap<String, Pessoa> tripulantes;
+    // Cópia imutável entregue aos leitores; null depois de qualquer alteração, refeita na próxima leitura
+    private volatile java.util.List<Pessoa> snapshotTripulantes;
+    // toFullDataString() pronto; null depois de qualquer alteração, refeito na próxima leitura
+    private volatile String dadosCompletos;
 
     public Aviao(String modelo, int anoFabricacao, String marca) {
-        this.modelo = modelo;
-        this.anoFabricacao = anoFabricacao;
-        this.marca = marca;
-        this.tripulantes = new java.util.ArrayList<>();
+        this.identificacao = new Identificacao(modelo, anoFabricacao, marca);
+        this.tripulantes = new java.util.LinkedHashMap<>();
     }
 
     // Getters
     public String getModelo() {
-        return modelo;
+        return identificacao.modelo();
     }
 
     public int getAnoFabricacao() {
-        return anoFabricacao;
+        return identificacao.anoFabricacao();
     }
 
     public String getMarca() {
-        return marca;
+        return identificacao.marca();
     }
 
-    public java.util.ArrayList<Pessoa> getTripulantes() {
-        return new java.util.ArrayList<>(tripulantes); // Retorna cópia para proteger encapsulamento
+    public Identificacao getIdentificacao() {
+        return identificacao;
     }
 
-    // Setters
-    public void setModelo(String modelo) {
-        this.modelo = modelo;
+    /**
+     * Tripulação em ordem de inclusão. A lista é imutável e compartilhada entre
+     * leitores até a próxima alteração, então não há cópia por chamada.
+     */
+    public java.util.List<Pessoa> getTripulantes() {
+        java.util.List<Pessoa> snapshot = snapshotTripulantes;
+        if (snapshot != null) {
+            return snapshot;
+        }
+        synchronized (this) {
+            if (snapshotTripulantes == null) {
+                snapshotTripulantes = java.util.List.copyOf(tripulantes.values());
+            }
+            return snapshotTripulantes;
+        }
+    }
+
+    /**
+     * Troca modelo, ano e marca de uma vez (o repositório troca a chave junto)
+     */
+    public synchronized void renomear(String modelo, int anoFabricacao, String marca) {
+        this.identificacao = new Identificacao(modelo, anoFabricacao, marca);
+        dadosCompletos = null;
     }
 
-    public void setAnoFabricacao(int anoFabricacao) {
-        this.anoFabricacao = anoFabricacao;
+    // Métodos para gerenciar tripulantes (sincronizados: o avião é compartilhado entre sessões)
+    public synchronized void adicionarTripulante(Pessoa tripulante) {
+        if (tripulantes.putIfAbsent(tripulante.getCpf(), tripulante) == null) {
+            alterou();
+        }
     }
 
-    public void setMarca(String marca) {
-        this.marca = marca;
+    public synchronized boolean removerTripulante(String cpf) {
+        if (tripulantes.remove(cpf) == null) {
+            return false;
+        }
+        alterou();
+        return true;
     }
 
-    // Métodos para gerenciar tripulantes
-    public void adicionarTripulante(Pessoa tripulante) {
-        if (!tripulantes.contains(tripulante)) {
-            tripulantes.add(tripulante);
+    /**
+     * Troca a versão da pessoa na tripulação, mantendo a posição, se a que está lá
+     * for exatamente 'anterior' (uma pessoa reinserida por cima não é trocada)
+     */
+    public synchronized boolean substituirTripulante(Pessoa anterior, Pessoa nova) {
+        if (tripulantes.get(anterior.getCpf()) != anterior) {
+            return false;
         }
+        tripulantes.put(anterior.getCpf(), nova);
+        alterou();
+        return true;
     }
 
-    public boolean removerTripulante(String cpf) {
-        return tripulantes.removeIf(tripulante -> tripulante.getCpf().equals(cpf));
+    /**
+     * Descarta as formas prontas da tripulação; chamado com o lock do avião
+     */
+    private void alterou() {
+        snapshotTripulantes = null;
+        dadosCompletos = null;
     }
 
-    public Pessoa getTripulantePorCpf(String cpf) {
-        return tripulantes.stream()
-                .filter(t -> t.getCpf().equals(cpf))
-                .findFirst()
-                .orElse(null);
+    /**
+     * Cópia com a mesma identificação e tripulação, que não acompanha as alterações deste
+     */
+    public synchronized Aviao copia() {
+        Identificacao id = identificacao;
+        Aviao copia = new Aviao(id.modelo(), id.anoFabricacao(), id.marca());
+        copia.tripulantes.putAll(tripulantes);
+        copia.dadosCompletos = dadosCompletos;
+        return copia;
+    }
+
+    public synchronized Pessoa getTripulantePorCpf(String cpf) {
+        return tripulantes.get(cpf);
     }
 
     /**
      * Serialização dos dados básicos do avião
      */
     public String toDataString() {
-        return modelo + ";" + anoFabricacao + ";" + marca;
+        Identificacao id = identificacao;
+        return id.modelo() + ";" + id.anoFabricacao() + ";" + id.marca();
     }
 
     /**
-     * Serialização completa incluindo tripulantes
+     * Serialização completa incluindo tripulantes. Fica pronta até a próxima
+     * alteração, então leituras repetidas não travam nem montam o texto de novo.
      */
     public String toFullDataString() {
+        String pronto = dadosCompletos;
+        if (pronto != null) {
+            return pronto;
+        }
+        synchronized (this) {
+            if (dadosCompletos == null) {
+                dadosCompletos = montarDadosCompletos();
+            }
+            return dadosCompletos;
+        }
+    }
+
+    private String montarDadosCompletos() {
         StringBuilder sb = new StringBuilder();
         sb.append(toDataString()).append(";").append(tripulantes.size());
 
-        for (Pessoa tripulante : tripulantes) {
+        for (Pessoa tripulante : tripulantes.values()) {
             sb.append(";").append(tripulante.getTipo()).append(";").append(tripulante.toDataString());
         }
 
@@ -87,22 +155,21 @@ public class Aviao {
         if (this == obj) return true;
         if (obj == null || getClass() != obj.getClass()) return false;
         Aviao aviao = (Aviao) obj;
-        return modelo.equals(aviao.modelo) &&
-                anoFabricacao == aviao.anoFabricacao &&
-                marca.equals(aviao.marca);
+        return identificacao.equals(aviao.identificacao);
     }
 
     @Override
     public int hashCode() {
-        return java.util.Objects.hash(modelo, anoFabricacao, marca);
+        return identificacao.hashCode();
     }
 
     @Override
     public String toString() {
+        Identificacao id = identificacao;
         return "Aviao{" +
-                "modelo='" + modelo + '\'' +
-                ", anoFabricacao=" + anoFabricacao +
-                ", marca='" + marca + '\'' +
+                "modelo='" + id.modelo() + '\'' +
+                ", anoFabricacao=" + id.anoFabricacao() +
+                ", marca='" + id.marca() + '\'' +
                 ", tripulantes=" + tripulantes.size() +
                 '}';
     }
@@ -1,7 +1,7 @@
 package crud.model;
 
 public class Passageiro extends Pessoa {
-    private String poltrona;
+    private final String poltrona;
 
     public Passageiro(String cpf, String nome, String endereco, String poltrona) {
         super(cpf, nome, endereco);
@@ -13,9 +13,16 @@ public class Passageiro extends Pessoa {
         return poltrona;
     }
 
-    // Setter específico
-    public void setPoltrona(String poltrona) {
-        this.poltrona = poltrona;
+    /**
+     * Cópia com novos dados
+     */
+    public Passageiro comDados(String nome, String endereco, String poltrona) {
+        return new Passageiro(cpf, nome, endereco, poltrona);
+    }
+
+    @Override
+    public Passageiro comDados(String nome, String endereco) {
+        return comDados(nome, endereco, getPoltrona());
     }
 
     @Override
@@ -24,7 +31,7 @@ public class Passageiro extends Pessoa {
     }
 
     @Override
-    public String toDataString() {
+    protected String montarDados() {
         return getBaseData() + ";" + poltrona;
     }
 
@@ -1,9 +1,17 @@
 package crud.model;
 
+/**
+ * Pessoa imutável: uma alteração cria outra instância (ver {@code comDados}), que
+ * o repositório troca no mapa de uma vez. Quem já tem a referência sempre vê um
+ * registro inteiro, sem lock.
+ */
 public abstract class Pessoa {
-    protected String cpf;
-    protected String nome;
-    protected String endereco;
+    protected final String cpf;
+    protected final String nome;
+    protected final String endereco;
+    // toDataString() montado na primeira vez que é pedido; como a pessoa não muda, vale para sempre.
+    // Corrida benigna (como o hash de String): no pior caso dois threads montam o mesmo texto
+    private String dados;
 
     public Pessoa(String cpf, String nome, String endereco) {
         this.cpf = cpf;
@@ -24,19 +32,29 @@ public abstract class Pessoa {
         return endereco;
     }
 
-    // Setters (CPF não pode ser alterado)
-    public void setNome(String nome) {
-        this.nome = nome;
-    }
+    /**
+     * Cópia com outro nome e endereço, mantendo os dados específicos do tipo
+     * (CPF não pode ser alterado)
+     */
+    public abstract Pessoa comDados(String nome, String endereco);
 
-    public void setEndereco(String endereco) {
-        this.endereco = endereco;
+    /**
+     * Serialização no formato do protocolo, montada uma vez e reaproveitada em
+     * cada GET e LIST
+     */
+    public String toDataString() {
+        String pronto = dados;
+        if (pronto == null) {
+            pronto = montarDados();
+            dados = pronto;
+        }
+        return pronto;
     }
 
     /**
-     * Método abstrato para serializar dados específicos da subclasse
+     * Monta a serialização com os dados específicos da subclasse
      */
-    public abstract String toDataString();
+    protected abstract String montarDados();
 
     /**
      * Método abstrato para obter o tipo da pessoa
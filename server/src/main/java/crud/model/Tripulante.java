@@ -1,8 +1,8 @@
 package crud.model;
 
 public class Tripulante extends Pessoa {
-    private double salario;
-    private String cargo;
+    private final double salario;
+    private final String cargo;
 
     public Tripulante(String cpf, String nome, String endereco, double salario, String cargo) {
         super(cpf, nome, endereco);
@@ -19,13 +19,16 @@ public class Tripulante extends Pessoa {
         return cargo;
     }
 
-    // Setters específicos
-    public void setSalario(double salario) {
-        this.salario = salario;
+    /**
+     * Cópia com novos dados
+     */
+    public Tripulante comDados(String nome, String endereco, double salario, String cargo) {
+        return new Tripulante(cpf, nome, endereco, salario, cargo);
     }
 
-    public void setCargo(String cargo) {
-        this.cargo = cargo;
+    @Override
+    public Tripulante comDados(String nome, String endereco) {
+        return comDados(nome, endereco, salario, cargo);
     }
 
     @Override
@@ -34,7 +37,7 @@ public class Tripulante extends Pessoa {
     }
 
     @Override
-    public String toDataString() {
+    protected String montarDados() {
         return getBaseData() + ";" + salario + ";" + cargo;
     }
 
@@ -0,0 +1,233 @@
+package crud.persistence;
+
+import crud.repository.RepositoryManager;
+import crud.repository.Visao;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Diretório de dados: snapshots e segmentos do journal, numerados por geração.
+ *
+ * <p>{@code snapshot-G.bin} é o estado no início de {@code journal-G.log}. Na
+ * abertura carrega o snapshot mais recente e reaplica só os segmentos a partir
+ * dele, então o tempo de reinício depende do tamanho dos dados e não do histórico.
+ *
+ * <p>A compactação periódica rotaciona o journal para a geração seguinte e, no
+ * mesmo ponto, abre uma {@link Visao} dos repositórios em uso; o snapshot é gravado
+ * dela, registro a registro, então corresponde exatamente ao ponto da rotação sem
+ * travar os escritores nem montar outra cópia do estado em memória. Depois do
+ * snapshot gravado, os arquivos das gerações anteriores são apagados.
+ */
+public final class Armazenamento implements Closeable {
+    public static final long INTERVALO_SNAPSHOT_PADRAO_S = 300;
+
+    private static final Pattern SNAPSHOT = Pattern.compile("snapshot-(\\d+)\\.bin");
+    private static final Pattern SEGMENTO = Pattern.compile("journal-(\\d+)\\.log");
+    // arquivo único usado antes da numeração por geração
+    private static final String JOURNAL_ANTIGO = "journal.log";
+
+    private final Path diretorio;
+    private final Journal journal;
+    private final RepositoryManager repositoryManager;
+    private final ScheduledExecutorService agendador;
+    private long geracaoSnapshot;  // snapshot mais recente (pode não existir na geração 0)
+    private long geracaoJournal;   // segmento em que o journal grava agora
+
+    private Armazenamento(Path diretorio, Journal journal, RepositoryManager repositoryManager,
+            long geracaoSnapshot, long geracaoJournal, long intervaloSnapshotS) {
+        this.diretorio = diretorio;
+        this.journal = journal;
+        this.repositoryManager = repositoryManager;
+        this.geracaoSnapshot = geracaoSnapshot;
+        this.geracaoJournal = geracaoJournal;
+        if (intervaloSnapshotS > 0) {
+            this.agendador = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+                Thread thread = new Thread(tarefa, "snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.agendador.scheduleWithFixedDelay(this::compactarAgendado,
+                    intervaloSnapshotS, intervaloSnapshotS, TimeUnit.SECONDS);
+        } else {
+            this.agendador = null;
+        }
+    }
+
+    /**
+     * Recupera o estado do diretório em um repositório novo e abre o journal
+     *
+     * @param novoRepositorio cria o repositório vazio em que o estado é recuperado
+     * @param reproducao cria, para um repositório, quem reaplica nele os registros do journal
+     * @param intervaloSnapshotS intervalo entre compactações; 0 desliga
+     */
+    public static Armazenamento abrir(Path diretorio, Supplier<RepositoryManager> novoRepositorio,
+            Function<RepositoryManager, Consumer<String>> reproducao,
+            Journal.Durabilidade durabilidade, long intervaloMs, long intervaloSnapshotS) throws IOException {
+        Files.createDirectories(diretorio);
+        Path antigo = diretorio.resolve(JOURNAL_ANTIGO);
+        if (Files.exists(antigo) && geracoes(diretorio, SEGMENTO).isEmpty()) {
+            Files.move(antigo, segmento(diretorio, 0), StandardCopyOption.ATOMIC_MOVE);
+        }
+        try (var temporarios = Files.newDirectoryStream(diretorio, "snapshot-*.tmp")) {
+            for (Path temporario : temporarios) {
+                Files.delete(temporario);
+            }
+        }
+
+        RepositoryManager repositoryManager = novoRepositorio.get();
+        TreeSet<Long> snapshots = geracoes(diretorio, SNAPSHOT);
+        long base = snapshots.isEmpty() ? 0 : snapshots.last();
+        if (!snapshots.isEmpty()) {
+            long inicio = System.nanoTime();
+            Snapshot.carregar(snapshot(diretorio, base), repositoryManager);
+            System.out.printf("Snapshot %d carregado (%d pessoas, %d aviões) em %d ms%n", base,
+                    repositoryManager.getPessoaRepository().size(), repositoryManager.getAviaoRepository().size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
+        }
+
+        // mais de um segmento só sobra de uma compactação interrompida; o último é o que continua recebendo registros
+        List<Long> segmentos = new ArrayList<>(geracoes(diretorio, SEGMENTO).tailSet(base));
+        if (segmentos.isEmpty()) {
+            segmentos.add(base);
+        }
+        Consumer<String> reproduzir = reproducao.apply(repositoryManager);
+        for (long geracao : segmentos.subList(0, segmentos.size() - 1)) {
+            int registros = Journal.reproduzir(segmento(diretorio, geracao), reproduzir);
+            System.out.println("Journal " + geracao + ": " + registros + " registros reaplicados");
+        }
+        long atual = segmentos.get(segmentos.size() - 1);
+        Journal journal = Journal.abrir(segmento(diretorio, atual), durabilidade, intervaloMs, reproduzir);
+
+        apagarAnteriores(diretorio, base);
+        return new Armazenamento(diretorio, journal, repositoryManager, base, atual, intervaloSnapshotS);
+    }
+
+    public Journal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Repositório com o estado recuperado na abertura, que o journal passa a acompanhar
+     */
+    public RepositoryManager getRepositoryManager() {
+        return repositoryManager;
+    }
+
+    private void compactarAgendado() {
+        try {
+            compactar();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Erro ao gravar snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Rotaciona o journal e grava o snapshot da geração nova. Não faz nada se não
+     * houve alteração desde o último snapshot.
+     */
+    public synchronized void compactar() throws IOException {
+        if (geracaoJournal == geracaoSnapshot && journal.tamanhoSegmento() == 0) {
+            return;
+        }
+        long inicio = System.nanoTime();
+        long nova = geracaoJournal + 1;
+        // a visão é aberta no ponto da rotação: o estado no início do segmento novo
+        Visao[] noCorte = new Visao[1];
+        journal.rotacionar(segmento(diretorio, nova), () -> noCorte[0] = repositoryManager.abrirVisao());
+        geracaoJournal = nova;
+
+        int pessoas;
+        int avioes;
+        Path temporario = diretorio.resolve("snapshot-" + nova + ".tmp");
+        try (Visao visao = noCorte[0]) {
+            pessoas = visao.quantidade("TRIPULANTE") + visao.quantidade("PASSAGEIRO");
+            avioes = visao.quantidadeAvioes();
+            Snapshot.gravar(temporario, visao);
+        }
+        Files.move(temporario, snapshot(diretorio, nova), StandardCopyOption.ATOMIC_MOVE);
+        sincronizarDiretorio(diretorio);
+        geracaoSnapshot = nova;
+        apagarAnteriores(diretorio, nova);
+
+        System.out.printf("Snapshot %d gravado (%d pessoas, %d aviões) em %d ms%n", nova,
+                pessoas, avioes, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
+    }
+
+    /**
+     * Para as compactações e fecha o journal
+     */
+    @Override
+    public void close() throws IOException {
+        if (agendador != null) {
+            agendador.shutdown();
+            try {
+                // uma compactação em andamento pode terminar; se não der tempo, é refeita no próximo início
+                agendador.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        journal.close();
+    }
+
+    private static Path snapshot(Path diretorio, long geracao) {
+        return diretorio.resolve("snapshot-" + geracao + ".bin");
+    }
+
+    private static Path segmento(Path diretorio, long geracao) {
+        return diretorio.resolve("journal-" + geracao + ".log");
+    }
+
+    private static TreeSet<Long> geracoes(Path diretorio, Pattern padrao) throws IOException {
+        TreeSet<Long> geracoes = new TreeSet<>();
+        try (var arquivos = Files.newDirectoryStream(diretorio)) {
+            for (Path arquivo : arquivos) {
+                Matcher m = padrao.matcher(arquivo.getFileName().toString());
+                if (m.matches()) {
+                    geracoes.add(Long.parseLong(m.group(1)));
+                }
+            }
+        }
+        return geracoes;
+    }
+
+    /**
+     * Apaga snapshots e segmentos de gerações já cobertas pelo snapshot 'base'
+     */
+    private static void apagarAnteriores(Path diretorio, long base) throws IOException {
+        for (long geracao : geracoes(diretorio, SNAPSHOT).headSet(base)) {
+            Files.deleteIfExists(snapshot(diretorio, geracao));
+        }
+        for (long geracao : geracoes(diretorio, SEGMENTO).headSet(base)) {
+            Files.deleteIfExists(segmento(diretorio, geracao));
+        }
+    }
+
+    /**
+     * Garante que a renomeação do snapshot chegou ao disco antes de apagar o journal
+     */
+    private static void sincronizarDiretorio(Path diretorio) {
+        try (FileChannel canal = FileChannel.open(diretorio, StandardOpenOption.READ)) {
+            canal.force(true);
+        } catch (IOException e) {
+            // nem todo sistema permite abrir diretórios; a renomeação já é atômica
+        }
+    }
+}
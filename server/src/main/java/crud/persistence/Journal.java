@@ -0,0 +1,485 @@
+package crud.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Journal (write-ahead log) dos comandos que alteram os repositórios.
+ *
+ * <p>Cada registro é o texto de um ou mais comandos, um por linha, gravado como
+ * {@code tamanho(4) crc32(4) bytesUtf8}. Na abertura os registros são reaplicados
+ * em ordem; um final incompleto ou corrompido (queda no meio de uma gravação) é
+ * descartado.
+ *
+ * <p>O lock do journal cobre só a anexação do registro ao buffer; a alteração em
+ * memória acontece antes, fora dele (ver {@link #anexar}). A ida ao disco fica com
+ * uma thread gravadora (group commit): enquanto ela grava um lote, os escritores
+ * seguintes acumulam o próximo, e um único fsync confirma todos eles.
+ *
+ * <p>{@link #rotacionar} passa a gravar em outro arquivo sem parar os escritores:
+ * a troca é feita pela gravadora, no ponto do buffer em que foi pedida.
+ */
+public final class Journal implements Closeable {
+    public static final long INTERVALO_PADRAO_MS = 100;
+
+    /**
+     * Quando um registro é considerado gravado
+     */
+    public enum Durabilidade {
+        /** fsync antes de responder; escritores simultâneos dividem o mesmo fsync */
+        SEMPRE,
+        /** fsync periódico; a resposta não espera o disco */
+        INTERVALO,
+        /** grava sem fsync; o sistema operacional decide quando ir ao disco */
+        SO
+    }
+
+    /**
+     * Executada no ponto da rotação (ver {@link #rotacionar})
+     */
+    @FunctionalInterface
+    public interface AcaoNoCorte {
+        void executar() throws IOException;
+    }
+
+    /**
+     * Executa a ação sem alterações aplicadas e ainda não anexadas (ver {@link #setCorte})
+     */
+    @FunctionalInterface
+    public interface Corte {
+        void executar(AcaoNoCorte acao) throws IOException;
+    }
+
+    private static final int CABECALHO = 8;
+    private static final int MAX_REGISTRO = 64 << 20;
+
+    private final Durabilidade durabilidade;
+    private final long intervaloNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition temDados = lock.newCondition();
+    private final Condition gravou = lock.newCondition();
+    private final CRC32 crc = new CRC32();
+    private final Thread gravador;
+
+    // Escritores anexam em 'pendente' enquanto a gravadora grava 'gravando'
+    private ByteBuffer pendente = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer gravando = ByteBuffer.allocate(64 * 1024);
+    private long anexados;   // bytes anexados desde a abertura
+    private long gravados;   // bytes que já têm a garantia da política
+    private long inicioSegmento; // valor de 'anexados' no início do arquivo atual
+    private FileChannel canal;   // trocado só pela gravadora
+    private FileChannel proximoCanal; // rotação pedida e ainda não feita
+    private int corteRotacao;    // posição em 'pendente' a partir da qual os bytes vão para proximoCanal
+    private long rotacoes;
+    private IOException falha;
+    private boolean fechado;
+    private volatile Corte corte = AcaoNoCorte::executar;
+
+    private Journal(FileChannel canal, long tamanho, Durabilidade durabilidade, long intervaloMs) {
+        this.canal = canal;
+        this.inicioSegmento = -tamanho;
+        this.durabilidade = durabilidade;
+        this.intervaloNanos = TimeUnit.MILLISECONDS.toNanos(intervaloMs);
+        this.gravador = new Thread(this::executarGravador, "journal-gravador");
+        this.gravador.setDaemon(true);
+        this.gravador.start();
+    }
+
+    /**
+     * Abre (ou cria) o journal, entregando a reproduzir cada registro já gravado,
+     * e o deixa pronto para novos registros.
+     *
+     * @param intervaloMs usado só com {@link Durabilidade#INTERVALO}
+     */
+    public static Journal abrir(Path arquivo, Durabilidade durabilidade, long intervaloMs,
+            Consumer<String> reproduzir) throws IOException {
+        if (arquivo.getParent() != null) {
+            Files.createDirectories(arquivo.getParent());
+        }
+        FileChannel canal = FileChannel.open(arquivo,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            Leitura leitura = ler(canal, reproduzir);
+            long valido = leitura.valido();
+            if (leitura.registros() > 0) {
+                System.out.println("Journal: " + leitura.registros() + " registros reaplicados");
+            }
+            if (valido < canal.size()) {
+                System.err.println("Journal: descartando " + (canal.size() - valido)
+                        + " bytes incompletos no final de " + arquivo);
+                canal.truncate(valido);
+            }
+            canal.position(valido);
+            return new Journal(canal, valido, durabilidade, intervaloMs);
+        } catch (IOException | RuntimeException e) {
+            canal.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reaplica os registros de um arquivo já fechado (ex.: um segmento anterior à
+     * última rotação), sem abri-lo para escrita
+     *
+     * @return quantidade de registros reaplicados
+     */
+    public static int reproduzir(Path arquivo, Consumer<String> reproduzir) throws IOException {
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            return ler(canal, reproduzir).registros();
+        }
+    }
+
+    private record Leitura(long valido, int registros) {
+    }
+
+    /**
+     * Lê os registros válidos desde o início, até o fim ou o primeiro inválido
+     */
+    private static Leitura ler(FileChannel canal, Consumer<String> reproduzir) throws IOException {
+        canal.position(0);
+        // o stream não é fechado: fecharia o canal
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(canal), 64 * 1024));
+        CRC32 crc = new CRC32();
+        long valido = 0;
+        int registros = 0;
+
+        while (true) {
+            byte[] dados;
+            int esperado;
+            try {
+                int tamanho = in.readInt();
+                if (tamanho < 0 || tamanho > MAX_REGISTRO) {
+                    break;
+                }
+                esperado = in.readInt();
+                dados = new byte[tamanho];
+                in.readFully(dados);
+            } catch (EOFException e) {
+                break;
+            }
+            crc.reset();
+            crc.update(dados);
+            if ((int) crc.getValue() != esperado) {
+                break;
+            }
+            reproduzir.accept(new String(dados, StandardCharsets.UTF_8));
+            valido += CABECALHO + dados.length;
+            registros++;
+        }
+        return new Leitura(valido, registros);
+    }
+
+    public Durabilidade getDurabilidade() {
+        return durabilidade;
+    }
+
+    /**
+     * Falha se o journal não aceita mais registros (gravação anterior falhou ou
+     * foi fechado). Chamado antes de aplicar uma alteração, para não aplicar algo
+     * que já se sabe que não será gravado.
+     *
+     * @throws UncheckedIOException se uma gravação anterior falhou
+     */
+    public void verificarDisponivel() {
+        lock.lock();
+        try {
+            verificar();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Anexa o registro ao próximo lote, sem esperar o disco. A ordem do arquivo é a
+     * ordem das chamadas: quem chama garante que alterações dependentes entre si
+     * sejam anexadas na ordem em que foram aplicadas.
+     *
+     * @return posição em que o registro termina, para {@link #aguardar}
+     * @throws UncheckedIOException se uma gravação anterior falhou
+     */
+    public long anexar(String registro) {
+        byte[] dados = registro.getBytes(StandardCharsets.UTF_8);
+        lock.lock();
+        try {
+            verificar();
+            anexar(dados);
+            if (durabilidade != Durabilidade.INTERVALO) {
+                temDados.signal();
+            }
+            return anexados;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Com {@link Durabilidade#SEMPRE}, espera o fsync que inclui os bytes até fim;
+     * nas outras políticas retorna na hora. Escritores que esperam juntos dividem
+     * o mesmo fsync.
+     *
+     * @throws UncheckedIOException se a gravação falhou
+     */
+    public void aguardar(long fim) {
+        if (durabilidade != Durabilidade.SEMPRE) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (gravados < fim && falha == null) {
+                gravou.awaitUninterruptibly();
+            }
+            if (gravados < fim) {
+                throw new UncheckedIOException("Falha ao gravar o journal", falha);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Bytes gravados no arquivo atual, contando os que já existiam na abertura
+     */
+    public long tamanhoSegmento() {
+        lock.lock();
+        try {
+            return anexados - inicioSegmento;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Passa a gravar em um arquivo novo. Os registros anexados até aqui terminam
+     * no arquivo atual, que é sincronizado e fechado; os seguintes vão para o novo.
+     * Os escritores não esperam: só quem pediu a rotação aguarda a troca.
+     *
+     * <p>O ponto da troca é escolhido dentro do {@link #setCorte corte}, e noCorte
+     * executa ali mesmo: o que ela lê dos repositórios é exatamente o estado que os
+     * arquivos até o atual reproduzem.
+     */
+    public void rotacionar(Path novoArquivo, AcaoNoCorte noCorte) throws IOException {
+        FileChannel novo = FileChannel.open(novoArquivo, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        long[] alvo = new long[1];
+        try {
+            corte.executar(() -> {
+                lock.lock();
+                try {
+                    verificar();
+                    proximoCanal = novo;
+                    corteRotacao = pendente.position();
+                    inicioSegmento = anexados;
+                    alvo[0] = rotacoes + 1;
+                    temDados.signal();
+                } finally {
+                    lock.unlock();
+                }
+                noCorte.executar();
+            });
+        } catch (IOException | RuntimeException e) {
+            if (alvo[0] == 0) {
+                novo.close();
+                throw e;
+            }
+            // a troca já foi pedida e segue na gravadora
+            aguardarRotacao(alvo[0]);
+            throw e;
+        }
+        aguardarRotacao(alvo[0]);
+    }
+
+    private void aguardarRotacao(long alvo) throws IOException {
+        lock.lock();
+        try {
+            while (rotacoes < alvo && falha == null) {
+                gravou.awaitUninterruptibly();
+            }
+            if (rotacoes < alvo) {
+                throw new IOException("Falha ao gravar o journal", falha);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Define como executar algo num ponto em que toda alteração já aplicada aos
+     * repositórios foi anexada e nenhuma outra começa. Quem aplica e anexa as
+     * alterações (ver {@code MessageProcessor}) é quem sabe fazer isso; sem corte,
+     * a ação executa direto, o que só vale sem escritores concorrentes.
+     */
+    public void setCorte(Corte corte) {
+        this.corte = corte;
+    }
+
+    private void verificar() {
+        if (falha != null) {
+            throw new UncheckedIOException("Falha ao gravar o journal", falha);
+        }
+        if (fechado) {
+            throw new IllegalStateException("Journal fechado");
+        }
+    }
+
+    private void anexar(byte[] dados) {
+        if (pendente.remaining() < CABECALHO + dados.length) {
+            ByteBuffer maior = ByteBuffer.allocate(Math.max(pendente.capacity() * 2, pendente.position() + CABECALHO + dados.length));
+            pendente.flip();
+            maior.put(pendente);
+            pendente = maior;
+        }
+        crc.reset();
+        crc.update(dados);
+        pendente.putInt(dados.length).putInt((int) crc.getValue()).put(dados);
+        anexados += CABECALHO + dados.length;
+    }
+
+    private void executarGravador() {
+        while (true) {
+            ByteBuffer lote;
+            long fim;
+            FileChannel novo;
+            int corte;
+            lock.lock();
+            try {
+                aguardarLote();
+                if (pendente.position() == 0 && proximoCanal == null) {
+                    if (fechado) {
+                        return;
+                    }
+                    continue;
+                }
+                // troca os buffers: os escritores seguem anexando enquanto este lote vai ao disco
+                lote = pendente;
+                pendente = gravando;
+                gravando = lote;
+                fim = anexados;
+                novo = proximoCanal;
+                corte = corteRotacao;
+                proximoCanal = null;
+            } finally {
+                lock.unlock();
+            }
+
+            IOException erro = null;
+            boolean rotacao = novo != null;
+            try {
+                lote.flip();
+                if (novo != null) {
+                    // o que veio antes do corte fecha o arquivo atual
+                    int limite = lote.limit();
+                    lote.limit(corte);
+                    escrever(lote);
+                    canal.force(true);
+                    canal.close();
+                    canal = novo;
+                    novo = null;
+                    lote.limit(limite);
+                }
+                escrever(lote);
+                if (durabilidade != Durabilidade.SO) {
+                    canal.force(false);
+                }
+            } catch (IOException e) {
+                erro = e;
+                if (novo != null) {
+                    try {
+                        novo.close();
+                    } catch (IOException ignorada) {
+                        // a falha original é a que importa
+                    }
+                }
+            } finally {
+                lote.clear();
+            }
+
+            lock.lock();
+            try {
+                if (erro != null) {
+                    System.err.println("Erro ao gravar o journal: " + erro.getMessage());
+                    falha = erro;
+                } else {
+                    gravados = fim;
+                    if (rotacao) {
+                        rotacoes++;
+                    }
+                }
+                gravou.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (erro != null) {
+                return;
+            }
+        }
+    }
+
+    private void escrever(ByteBuffer dados) throws IOException {
+        while (dados.hasRemaining()) {
+            canal.write(dados);
+        }
+    }
+
+    /**
+     * Chamado com o lock: espera o próximo lote conforme a política
+     */
+    private void aguardarLote() {
+        if (durabilidade == Durabilidade.INTERVALO) {
+            long restante = intervaloNanos;
+            try {
+                while (restante > 0 && proximoCanal == null && !fechado) {
+                    restante = temDados.awaitNanos(restante);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+        while (pendente.position() == 0 && proximoCanal == null && !fechado) {
+            temDados.awaitUninterruptibly();
+        }
+    }
+
+    /**
+     * Grava o que estiver pendente, faz o fsync final e fecha o arquivo
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (fechado) {
+                return;
+            }
+            fechado = true;
+            temDados.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            gravador.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            canal.force(true);
+        } finally {
+            canal.close();
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package crud.persistence;
+
+import crud.model.Aviao;
+import crud.model.Passageiro;
+import crud.model.Pessoa;
+import crud.model.Tripulante;
+import crud.repository.RepositoryManager;
+import crud.repository.Visao;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Cópia binária do estado completo dos repositórios.
+ *
+ * <p>Formato: {@code magia(4) versao(4)}, as pessoas ({@code quantidade(4)} e um
+ * registro por pessoa), os aviões ({@code quantidade(4)}, e por avião modelo, ano,
+ * marca e os registros da tripulação) e, no final, o crc32 de tudo o que veio antes.
+ * Textos são {@code tamanho(4) bytesUtf8}. A tripulação vai completa, e não só o
+ * CPF, porque um avião pode guardar uma versão da pessoa diferente da do
+ * repositório (ex.: pessoa reinserida depois de entrar na tripulação).
+ *
+ * <p>A leitura é feita sobre o arquivo mapeado em memória, sem cópia intermediária,
+ * em trechos de até {@value #JANELA} bytes: um mapeamento não passa de 2 GB, mas o
+ * arquivo pode.
+ */
+public final class Snapshot {
+    private static final int MAGIA = 0x44534453; // "DSDS"
+    private static final int VERSAO = 1;
+    private static final byte PASSAGEIRO = 1;
+    private static final byte TRIPULANTE = 2;
+    private static final int JANELA = 1 << 30;
+
+    private Snapshot() {
+    }
+
+    /**
+     * Grava o estado da visão no arquivo, com fsync no final. Os registros vão para
+     * o arquivo à medida que a visão os entrega, sem cópia dos repositórios.
+     */
+    public static void gravar(Path arquivo, Visao visao) throws IOException {
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            // o stream não é fechado: fecharia o canal antes do fsync
+            OutputStream arquivoOut = new BufferedOutputStream(Channels.newOutputStream(canal), 256 * 1024);
+            CRC32 crc = new CRC32();
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(arquivoOut, crc));
+
+            out.writeInt(MAGIA);
+            out.writeInt(VERSAO);
+            out.writeInt(visao.quantidade("TRIPULANTE") + visao.quantidade("PASSAGEIRO"));
+            visao.pessoas("TRIPULANTE", pessoa -> gravarPessoa(out, pessoa));
+            visao.pessoas("PASSAGEIRO", pessoa -> gravarPessoa(out, pessoa));
+            out.writeInt(visao.quantidadeAvioes());
+            // identificação e tripulação são imutáveis: o que foi lido não muda enquanto é gravado
+            visao.avioes(aviao -> new EstadoAviao(aviao.getIdentificacao(), aviao.getTripulantes()), aviao -> {
+                gravarTexto(out, aviao.identificacao().modelo());
+                out.writeInt(aviao.identificacao().anoFabricacao());
+                gravarTexto(out, aviao.identificacao().marca());
+                out.writeInt(aviao.tripulantes().size());
+                for (Pessoa tripulante : aviao.tripulantes()) {
+                    gravarPessoa(out, tripulante);
+                }
+            });
+            out.flush();
+            new DataOutputStream(arquivoOut).writeInt((int) crc.getValue());
+            arquivoOut.flush();
+            canal.force(true);
+        }
+    }
+
+    private record EstadoAviao(Aviao.Identificacao identificacao, List<Pessoa> tripulantes) {
+    }
+
+    private static void gravarPessoa(DataOutputStream out, Pessoa pessoa) throws IOException {
+        if (pessoa instanceof Tripulante tripulante) {
+            out.writeByte(TRIPULANTE);
+            gravarBase(out, pessoa);
+            out.writeDouble(tripulante.getSalario());
+            gravarTexto(out, tripulante.getCargo());
+        } else {
+            out.writeByte(PASSAGEIRO);
+            gravarBase(out, pessoa);
+            gravarTexto(out, ((Passageiro) pessoa).getPoltrona());
+        }
+    }
+
+    private static void gravarBase(DataOutputStream out, Pessoa pessoa) throws IOException {
+        gravarTexto(out, pessoa.getCpf());
+        gravarTexto(out, pessoa.getNome());
+        gravarTexto(out, pessoa.getEndereco());
+    }
+
+    private static void gravarTexto(DataOutputStream out, String texto) throws IOException {
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Carrega o arquivo no repositório (que deve estar vazio)
+     *
+     * @throws IOException se o arquivo estiver incompleto ou corrompido
+     */
+    public static void carregar(Path arquivo, RepositoryManager repositoryManager) throws IOException {
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            long tamanho = canal.size();
+            if (tamanho < 16) {
+                throw new IOException("Snapshot incompleto: " + arquivo);
+            }
+            long corpo = tamanho - 4;
+
+            CRC32 crc = new CRC32();
+            for (long inicio = 0; inicio < corpo; inicio += JANELA) {
+                crc.update(canal.map(FileChannel.MapMode.READ_ONLY, inicio, Math.min(JANELA, corpo - inicio)));
+            }
+            ByteBuffer esperado = ByteBuffer.allocate(4);
+            while (esperado.hasRemaining()) {
+                if (canal.read(esperado, corpo + esperado.position()) < 0) {
+                    throw new IOException("Snapshot incompleto: " + arquivo);
+                }
+            }
+            if ((int) crc.getValue() != esperado.getInt(0)) {
+                throw new IOException("Snapshot corrompido (crc): " + arquivo);
+            }
+
+            Leitor leitor = new Leitor(canal, corpo);
+            if (leitor.entrada(8).getInt() != MAGIA || leitor.entrada.getInt() != VERSAO) {
+                throw new IOException("Formato de snapshot desconhecido: " + arquivo);
+            }
+            leitor.carregar(repositoryManager);
+        }
+    }
+
+    /**
+     * Decodifica os registros, reaproveitando um único buffer para os textos. O
+     * arquivo é mapeado um trecho por vez; um registro que cruza o fim do trecho
+     * faz o próximo ser mapeado a partir do início dele.
+     */
+    private static final class Leitor {
+        private final FileChannel canal;
+        private final long fim;
+        private long inicioTrecho;
+        private ByteBuffer entrada = ByteBuffer.allocate(0);
+        private byte[] texto = new byte[256];
+
+        Leitor(FileChannel canal, long fim) {
+            this.canal = canal;
+            this.fim = fim;
+        }
+
+        /**
+         * Trecho mapeado com pelo menos n bytes a partir da posição atual
+         */
+        ByteBuffer entrada(int n) throws IOException {
+            if (entrada.remaining() < n) {
+                inicioTrecho += entrada.position();
+                long tamanho = Math.min(JANELA, fim - inicioTrecho);
+                if (tamanho < n) {
+                    throw new IOException("Snapshot inválido: registro passa do fim do arquivo");
+                }
+                entrada = canal.map(FileChannel.MapMode.READ_ONLY, inicioTrecho, tamanho);
+            }
+            return entrada;
+        }
+
+        void carregar(RepositoryManager repositoryManager) throws IOException {
+            try {
+                int pessoas = entrada(4).getInt();
+                for (int i = 0; i < pessoas; i++) {
+                    repositoryManager.getPessoaRepository().insert(lerPessoa());
+                }
+                int avioes = entrada(4).getInt();
+                for (int i = 0; i < avioes; i++) {
+                    String modelo = lerTexto();
+                    int ano = entrada(4).getInt();
+                    Aviao aviao = new Aviao(modelo, ano, lerTexto());
+                    int tripulantes = entrada(4).getInt();
+                    for (int j = 0; j < tripulantes; j++) {
+                        aviao.adicionarTripulante(daRepositorio(repositoryManager, lerPessoa()));
+                    }
+                    repositoryManager.getAviaoRepository().insert(aviao);
+                }
+            } catch (RuntimeException e) {
+                throw new IOException("Snapshot inválido: " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Usa o objeto do repositório quando ele tem os mesmos dados, para que um
+         * UPDATE da pessoa continue aparecendo na tripulação depois de reiniciar
+         */
+        private static Pessoa daRepositorio(RepositoryManager repositoryManager, Pessoa lida) {
+            Pessoa atual = repositoryManager.getPessoaRepository().get(lida.getCpf());
+            if (atual != null && atual.getTipo().equals(lida.getTipo())
+                    && atual.toDataString().equals(lida.toDataString())) {
+                return atual;
+            }
+            return lida;
+        }
+
+        private Pessoa lerPessoa() throws IOException {
+            byte tipo = entrada(1).get();
+            String cpf = lerTexto();
+            String nome = lerTexto();
+            String endereco = lerTexto();
+            if (tipo == TRIPULANTE) {
+                double salario = entrada(8).getDouble();
+                return new Tripulante(cpf, nome, endereco, salario, lerTexto());
+            }
+            if (tipo == PASSAGEIRO) {
+                return new Passageiro(cpf, nome, endereco, lerTexto());
+            }
+            throw new IOException("Tipo de pessoa desconhecido no snapshot: " + tipo);
+        }
+
+        private String lerTexto() throws IOException {
+            int tamanho = entrada(4).getInt();
+            if (tamanho < 0 || tamanho > JANELA) {
+                throw new IOException("Snapshot inválido: texto com " + tamanho + " bytes");
+            }
+            if (tamanho > texto.length) {
+                texto = new byte[Math.max(tamanho, texto.length * 2)];
+            }
+            entrada(tamanho).get(texto, 0, tamanho);
+            return new String(texto, 0, tamanho, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package crud.repository;
+
+import crud.model.Aviao;
+
+/**
+ * Chave imutável de um avião: (modelo, anoFabricacao, marca).
+ * O hash é calculado uma vez na construção, e a ordem natural é a mesma
+ * usada nas listagens: modelo, depois ano, depois marca.
+ */
+public final class AviaoKey implements Comparable<AviaoKey> {
+    private final String modelo;
+    private final int anoFabricacao;
+    private final String marca;
+    private final int hash;
+
+    public AviaoKey(String modelo, int anoFabricacao, String marca) {
+        this.modelo = modelo;
+        this.anoFabricacao = anoFabricacao;
+        this.marca = marca;
+        this.hash = (modelo.hashCode() * 31 + anoFabricacao) * 31 + marca.hashCode();
+    }
+
+    public static AviaoKey of(Aviao aviao) {
+        Aviao.Identificacao id = aviao.getIdentificacao();
+        return new AviaoKey(id.modelo(), id.anoFabricacao(), id.marca());
+    }
+
+    public String getModelo() {
+        return modelo;
+    }
+
+    public int getAnoFabricacao() {
+        return anoFabricacao;
+    }
+
+    public String getMarca() {
+        return marca;
+    }
+
+    @Override
+    public int compareTo(AviaoKey outra) {
+        int cmp = modelo.compareTo(outra.modelo);
+        if (cmp == 0) {
+            cmp = Integer.compare(anoFabricacao, outra.anoFabricacao);
+        }
+        if (cmp == 0) {
+            cmp = marca.compareTo(outra.marca);
+        }
+        return cmp;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        AviaoKey outra = (AviaoKey) obj;
+        return hash == outra.hash
+                && anoFabricacao == outra.anoFabricacao
+                && modelo.equals(outra.modelo)
+                && marca.equals(outra.marca);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return modelo + ";" + anoFabricacao + ";" + marca;
+    }
+}
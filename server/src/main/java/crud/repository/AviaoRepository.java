@@ -4,116 +4,454 @@ import crud.model.Aviao;
 import crud.model.Pessoa;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Repo para gerenciar Aviões
+ *
+ * <p>Aviões são indexados por {@link AviaoKey}: um mapa hash para as buscas e um
+ * mapa ordenado, mantido junto, para as listagens. Leituras não travam; quem
+ * altera os mapas trava a listra (um de {@value #LISTRAS} locks, escolhido pelo
+ * hash) de cada chave envolvida, então escritas em chaves diferentes correm em
+ * paralelo e uma troca de chave é atômica para as outras escritas.
+ *
+ * <p>Um índice reverso guarda, por CPF, os aviões (o próprio objeto, não a chave)
+ * em que a pessoa está na tripulação; assim ele não muda quando o avião troca de
+ * chave. Um avião substituído ou removido sai do índice logo depois de sair dos
+ * mapas, por isso as consultas conferem cada avião antes de devolvê-lo.
+ *
+ * <p>Durante uma troca de chave o avião fica por um instante nas duas. As leituras
+ * só aceitam uma entrada cuja chave é a identificação atual do avião, então ele
+ * aparece uma vez só; a quantidade vem de um contador que a troca não altera. Uma
+ * listagem que cruzou uma troca pode ter passado pela chave nova antes de ela
+ * entrar e pela antiga depois de sair, então é refeita (e, se as trocas não
+ * derem trégua, feita com todas as listras).
+ *
+ * <p>Ordem dos locks: escrita em {@link Versoes}, listras (em ordem de índice),
+ * avião, índice reverso. Antes de mudar o avião de uma chave, a escrita registra
+ * o valor anterior para as {@link Visao}s abertas.
  */
 public class AviaoRepository {
-    private final Map<String, Aviao> avioes; // Chave: modelo+ano+marca
+    private static final int LISTRAS = 64;
+    private static final Aviao[] NENHUM = new Aviao[0];
+    private static final int TENTATIVAS = 3;
+    private static final long TROCA_CONCLUIDA = (1L << 32) - 1;
+
+    private final Map<AviaoKey, Aviao> avioes;
+    private final ConcurrentSkipListMap<AviaoKey, Aviao> ordenados = new ConcurrentSkipListMap<>();
+    // cada array é trocado inteiro (nunca alterado), então um leitor sempre vê um conjunto completo
+    private final Map<String, Aviao[]> avioesPorCpf = new ConcurrentHashMap<>();
+    private final ReentrantLock[] listras = new ReentrantLock[LISTRAS];
+    // alterado com a listra da chave: +1 em chave nova, -1 na remoção
+    private final AtomicInteger quantidade = new AtomicInteger();
+    // 32 bits baixos: trocas de chave em andamento; altos: trocas concluídas
+    private final AtomicLong trocas = new AtomicLong();
+    private final Versoes versoes;
 
     public AviaoRepository() {
-        this.avioes = new ConcurrentHashMap<>();
+        this(new Versoes());
     }
 
-    /**
-     * Gera chave única para o avião
-     */
-    private String generateKey(String modelo, int anoFabricacao, String marca) {
-        return modelo + "_" + anoFabricacao + "_" + marca;
+    AviaoRepository(Versoes versoes) {
+        this.avioes = new ConcurrentHashMap<>();
+        this.versoes = versoes;
+        for (int i = 0; i < LISTRAS; i++) {
+            listras[i] = new ReentrantLock();
+        }
     }
 
-    private String generateKey(Aviao aviao) {
-        return generateKey(aviao.getModelo(), aviao.getAnoFabricacao(), aviao.getMarca());
+    private static int listra(AviaoKey key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (LISTRAS - 1);
     }
 
     /**
-     * Insere um novo avião
+     * Insere um novo avião (substitui o que tiver a mesma chave)
      */
     public void insert(Aviao aviao) {
-        String key = generateKey(aviao);
-        avioes.put(key, aviao);
+        canonizar(aviao);
+        AviaoKey key = AviaoKey.of(aviao);
+        ReentrantLock trava = listras[listra(key)];
+        versoes.iniciarEscrita();
+        trava.lock();
+        try {
+            Aviao anterior = avioes.get(key);
+            if (anterior != aviao) {
+                versoes.registrarAviao(key, anterior);
+            }
+            if (anterior == null) {
+                quantidade.incrementAndGet();
+            }
+            // um avião reinserido (ex.: desfazer de BATCH) volta com a sua tripulação
+            synchronized (aviao) {
+                for (Pessoa tripulante : aviao.getTripulantes()) {
+                    vincular(tripulante.getCpf(), aviao);
+                }
+                avioes.put(key, aviao);
+                ordenados.put(key, aviao);
+            }
+            if (anterior != null && anterior != aviao) {
+                desvincularTripulacao(anterior);
+            }
+        } finally {
+            trava.unlock();
+            versoes.terminarEscrita();
+        }
     }
 
     /**
-     * Atualiza um avião existente
+     * Troca a chave de um avião existente. A nova chave é publicada antes de a
+     * antiga sair, então quem busca o avião durante a troca o encontra por uma
+     * delas; o objeto é o mesmo, e a tripulação e o índice reverso não mudam.
+     *
+     * @throws IllegalStateException se já houver outro avião com a nova chave
      */
     public boolean update(String modelo, int anoFabricacao, String marca,
         String novoModelo, int novoAno, String novaMarca) {
-        String oldKey = generateKey(modelo, anoFabricacao, marca);
-        Aviao aviao = avioes.get(oldKey);
+        AviaoKey antiga = new AviaoKey(modelo, anoFabricacao, marca);
+        novoModelo = Dicionario.MODELOS.canonico(novoModelo);
+        novaMarca = Dicionario.MARCAS.canonico(novaMarca);
+        AviaoKey nova = new AviaoKey(novoModelo, novoAno, novaMarca);
 
-        if (aviao == null) {
-            return false;
+        // as duas listras em ordem de índice, para duas trocas cruzadas não se travarem
+        int a = listra(antiga);
+        int b = listra(nova);
+        ReentrantLock primeira = listras[Math.min(a, b)];
+        ReentrantLock segunda = listras[Math.max(a, b)];
+        versoes.iniciarEscrita();
+        primeira.lock();
+        segunda.lock();
+        try {
+            Aviao aviao = avioes.get(antiga);
+            if (aviao == null) {
+                return false;
+            }
+            if (nova.equals(antiga)) {
+                return true;
+            }
+            if (avioes.containsKey(nova)) {
+                throw new IllegalStateException("Já existe um avião " + nova);
+            }
+            // com o lock do avião, um ADD_TRIPULANTE pela chave antiga espera e depois não o encontra mais
+            synchronized (aviao) {
+                versoes.registrarAviao(antiga, aviao);
+                versoes.registrarAviao(nova, null);
+                trocas.incrementAndGet();
+                try {
+                    avioes.put(nova, aviao);
+                    ordenados.put(nova, aviao);
+                    aviao.renomear(novoModelo, novoAno, novaMarca);
+                    avioes.remove(antiga);
+                    ordenados.remove(antiga);
+                } finally {
+                    trocas.addAndGet(TROCA_CONCLUIDA);
+                }
+            }
+            return true;
+        } finally {
+            segunda.unlock();
+            primeira.unlock();
+            versoes.terminarEscrita();
         }
+    }
+
+    /**
+     * Troca modelo e marca pelas instâncias compartilhadas do {@link Dicionario};
+     * a chave criada depois já nasce com elas
+     */
+    private static void canonizar(Aviao aviao) {
+        Aviao.Identificacao id = aviao.getIdentificacao();
+        String modelo = Dicionario.MODELOS.canonico(id.modelo());
+        String marca = Dicionario.MARCAS.canonico(id.marca());
+        if (modelo != id.modelo() || marca != id.marca()) {
+            aviao.renomear(modelo, id.anoFabricacao(), marca);
+        }
+    }
+
+    private Aviao remover(AviaoKey key) {
+        ReentrantLock trava = listras[listra(key)];
+        versoes.iniciarEscrita();
+        trava.lock();
+        try {
+            Aviao atual = avioes.get(key);
+            if (atual == null) {
+                return null;
+            }
+            versoes.registrarAviao(key, atual);
+            avioes.remove(key);
+            ordenados.remove(key);
+            quantidade.decrementAndGet();
+            desvincularTripulacao(atual);
+            return atual;
+        } finally {
+            trava.unlock();
+            versoes.terminarEscrita();
+        }
+    }
 
-        // Remove da chave antiga
-        avioes.remove(oldKey);
+    /**
+     * Tira do índice reverso um avião que acabou de sair dos mapas. Com o lock do
+     * avião, um ADD_TRIPULANTE que já passou da conferência termina antes, e a
+     * pessoa que ele incluiu também sai.
+     */
+    private void desvincularTripulacao(Aviao aviao) {
+        synchronized (aviao) {
+            for (Pessoa tripulante : aviao.getTripulantes()) {
+                desvincular(tripulante.getCpf(), aviao);
+            }
+        }
+    }
 
-        // Atualiza dados
-        aviao.setModelo(novoModelo);
-        aviao.setAnoFabricacao(novoAno);
-        aviao.setMarca(novaMarca);
+    private void vincular(String cpf, Aviao aviao) {
+        // compute no próprio CPF: não perde a inclusão se outro thread esvaziar o conjunto
+        avioesPorCpf.compute(cpf, (chave, atuais) -> {
+            if (atuais == null) {
+                return new Aviao[] {aviao};
+            }
+            for (Aviao existente : atuais) {
+                if (existente == aviao) {
+                    return atuais;
+                }
+            }
+            Aviao[] novos = Arrays.copyOf(atuais, atuais.length + 1);
+            novos[atuais.length] = aviao;
+            return novos;
+        });
+    }
 
-        // Insere com nova chave
-        String newKey = generateKey(aviao);
-        avioes.put(newKey, aviao);
+    private void desvincular(String cpf, Aviao aviao) {
+        avioesPorCpf.computeIfPresent(cpf, (chave, atuais) -> {
+            for (int i = 0; i < atuais.length; i++) {
+                if (atuais[i] == aviao) {
+                    if (atuais.length == 1) {
+                        return null;
+                    }
+                    Aviao[] novos = new Aviao[atuais.length - 1];
+                    System.arraycopy(atuais, 0, novos, 0, i);
+                    System.arraycopy(atuais, i + 1, novos, i, novos.length - i);
+                    return novos;
+                }
+            }
+            return atuais;
+        });
+    }
 
-        return true;
+    /**
+     * Índice ordenado, percorrido pelas {@link Visao}s
+     */
+    Map<AviaoKey, Aviao> ordenados() {
+        return ordenados;
     }
 
     /**
      * Busca um avião
      */
     public Aviao get(String modelo, int anoFabricacao, String marca) {
-        String key = generateKey(modelo, anoFabricacao, marca);
-        return avioes.get(key);
+        AviaoKey key = new AviaoKey(modelo, anoFabricacao, marca);
+        Aviao aviao = avioes.get(key);
+        return aviao != null && atual(key, aviao) ? aviao : null;
+    }
+
+    /**
+     * Se a chave é a identificação atual do avião: durante uma troca de chave, a
+     * entrada que ainda não vale (ou que já deixou de valer) é ignorada
+     */
+    private static boolean atual(AviaoKey key, Aviao aviao) {
+        Aviao.Identificacao id = aviao.getIdentificacao();
+        return key.getAnoFabricacao() == id.anoFabricacao()
+                && key.getModelo().equals(id.modelo())
+                && key.getMarca().equals(id.marca());
     }
 
     /**
      * Remove um avião
      */
     public boolean delete(String modelo, int anoFabricacao, String marca) {
-        String key = generateKey(modelo, anoFabricacao, marca);
-        return avioes.remove(key) != null;
+        return remover(new AviaoKey(modelo, anoFabricacao, marca)) != null;
     }
 
     /**
-     * Lista todos os aviões
+     * Lista todos os aviões, ordenados por modelo, ano e marca
      */
     public List<Aviao> list() {
-        return avioes.values().stream()
-                .sorted(Comparator.comparing(Aviao::getModelo)
-                        .thenComparing(Aviao::getAnoFabricacao)
-                        .thenComparing(Aviao::getMarca))
-                .collect(Collectors.toList());
+        return percorrer(ordenados, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Página de aviões na ordem de {@link #list()}: até limite aviões depois de
+     * (modelo, anoFabricacao, marca), ou desde o início se modelo for null.
+     */
+    public List<Aviao> list(String modelo, int anoFabricacao, String marca, int limite) {
+        Map<AviaoKey, Aviao> restante = modelo == null
+                ? ordenados
+                : ordenados.tailMap(new AviaoKey(modelo, anoFabricacao, marca), false);
+        return percorrer(restante, limite);
+    }
+
+    /**
+     * Até limite aviões do mapa, sem lock se nenhuma troca de chave cruzar a leitura
+     */
+    private List<Aviao> percorrer(Map<AviaoKey, Aviao> mapa, int limite) {
+        for (int tentativa = 0; tentativa < TENTATIVAS; tentativa++) {
+            long antes = trocas.get();
+            if ((int) antes != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            List<Aviao> lista = coletar(mapa, limite);
+            if (trocas.get() == antes) {
+                return lista;
+            }
+        }
+        // trocas seguidas: com todas as listras (em ordem de índice) nenhuma começa
+        for (ReentrantLock trava : listras) {
+            trava.lock();
+        }
+        try {
+            return coletar(mapa, limite);
+        } finally {
+            for (int i = LISTRAS - 1; i >= 0; i--) {
+                listras[i].unlock();
+            }
+        }
+    }
+
+    private static List<Aviao> coletar(Map<AviaoKey, Aviao> mapa, int limite) {
+        List<Aviao> lista = new ArrayList<>(Math.min(limite, 1024));
+        for (Map.Entry<AviaoKey, Aviao> entrada : mapa.entrySet()) {
+            if (lista.size() == limite) {
+                break;
+            }
+            if (atual(entrada.getKey(), entrada.getValue())) {
+                lista.add(entrada.getValue());
+            }
+        }
+        return lista;
     }
 
     /**
      * Adiciona tripulante a um avião
      */
     public boolean adicionarTripulante(String modelo, int anoFabricacao, String marca, Pessoa tripulante) {
-        Aviao aviao = get(modelo, anoFabricacao, marca);
-        if (aviao != null) {
-            aviao.adicionarTripulante(tripulante);
+        AviaoKey key = new AviaoKey(modelo, anoFabricacao, marca);
+        versoes.iniciarEscrita();
+        try {
+            Aviao aviao = avioes.get(key);
+            if (aviao == null) {
+                return false;
+            }
+            // sob o lock do avião a tripulação e o índice reverso mudam juntos
+            synchronized (aviao) {
+                if (avioes.get(key) != aviao) {
+                    return false; // trocou de chave ou foi removido enquanto esperava o lock
+                }
+                versoes.registrarAviao(key, aviao);
+                aviao.adicionarTripulante(tripulante);
+                vincular(tripulante.getCpf(), aviao);
+            }
             return true;
+        } finally {
+            versoes.terminarEscrita();
         }
-        return false;
     }
 
     /**
      * Remove tripulante de um avião
      */
     public boolean removerTripulante(String modelo, int anoFabricacao, String marca, String cpfTripulante) {
-        Aviao aviao = get(modelo, anoFabricacao, marca);
-        if (aviao != null) {
-            return aviao.removerTripulante(cpfTripulante);
+        AviaoKey key = new AviaoKey(modelo, anoFabricacao, marca);
+        versoes.iniciarEscrita();
+        try {
+            Aviao aviao = avioes.get(key);
+            if (aviao == null) {
+                return false;
+            }
+            synchronized (aviao) {
+                if (avioes.get(key) != aviao || aviao.getTripulantePorCpf(cpfTripulante) == null) {
+                    return false;
+                }
+                versoes.registrarAviao(key, aviao);
+                aviao.removerTripulante(cpfTripulante);
+                desvincular(cpfTripulante, aviao);
+            }
+            return true;
+        } finally {
+            versoes.terminarEscrita();
+        }
+    }
+
+    /**
+     * Aviões em que a pessoa está na tripulação, na ordem de {@link #list()}.
+     * Custa O(aviões da pessoa), sem percorrer a frota.
+     */
+    public List<Aviao> avioesDoTripulante(String cpf) {
+        List<Aviao> resultado = new ArrayList<>();
+        for (Aviao aviao : avioesPorCpf.getOrDefault(cpf, NENHUM)) {
+            if (aviao.getTripulantePorCpf(cpf) != null && avioes.get(AviaoKey.of(aviao)) == aviao) {
+                resultado.add(aviao);
+            }
+        }
+        resultado.sort(Comparator.comparing(AviaoKey::of));
+        return resultado;
+    }
+
+    /**
+     * Troca, nas tripulações em que está, a versão anterior da pessoa pela nova
+     * (chamado depois de um UPDATE da pessoa)
+     */
+    public void substituirTripulante(Pessoa anterior, Pessoa nova) {
+        versoes.iniciarEscrita();
+        try {
+            for (Aviao aviao : avioesPorCpf.getOrDefault(anterior.getCpf(), NENHUM)) {
+                synchronized (aviao) {
+                    if (aviao.getTripulantePorCpf(anterior.getCpf()) == anterior) {
+                        registrarSeAtual(aviao);
+                        aviao.substituirTripulante(anterior, nova);
+                    }
+                }
+            }
+        } finally {
+            versoes.terminarEscrita();
+        }
+    }
+
+    /**
+     * Tira a pessoa da tripulação de todos os aviões em que ela está
+     */
+    public void removerDeTodos(String cpf) {
+        versoes.iniciarEscrita();
+        try {
+            for (Aviao aviao : avioesPorCpf.getOrDefault(cpf, NENHUM)) {
+                synchronized (aviao) {
+                    if (aviao.getTripulantePorCpf(cpf) != null) {
+                        registrarSeAtual(aviao);
+                        aviao.removerTripulante(cpf);
+                    }
+                    desvincular(cpf, aviao);
+                }
+            }
+        } finally {
+            versoes.terminarEscrita();
+        }
+    }
+
+    /**
+     * Registra o valor anterior do avião, com o lock dele, se ele ainda estiver no
+     * repositório (um avião já substituído ou removido não aparece nas visões)
+     */
+    private void registrarSeAtual(Aviao aviao) {
+        AviaoKey key = AviaoKey.of(aviao);
+        if (avioes.get(key) == aviao) {
+            versoes.registrarAviao(key, aviao);
         }
-        return false;
     }
 
     /**
@@ -131,21 +469,20 @@ public class AviaoRepository {
      * Verifica se não há aviões cadastrados
      */
     public boolean isEmpty() {
-        return avioes.isEmpty();
+        return quantidade.get() == 0;
     }
 
     /**
      * Retorna a quantidade de aviões cadastrados
      */
     public int size() {
-        return avioes.size();
+        return quantidade.get();
     }
 
     /**
      * Verifica se um avião existe
      */
     public boolean exists(String modelo, int anoFabricacao, String marca) {
-        String key = generateKey(modelo, anoFabricacao, marca);
-        return avioes.containsKey(key);
+        return get(modelo, anoFabricacao, marca) != null;
     }
 }
@@ -0,0 +1,88 @@
+package crud.repository;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dicionário de valores repetidos (cargo, marca, modelo): guarda uma única
+ * instância de cada texto e lhe dá um código int sequencial.
+ *
+ * <p>Os repositórios passam esses campos por {@link #canonico} ao inserir e ao
+ * atualizar, então registros com o mesmo valor compartilham a String, e comparar
+ * dois deles cai no atalho de referência do equals. O código serve para índices
+ * que prefiram int a texto. Para não crescer sem limite com valores arbitrários,
+ * depois de {@link #MAX_VALORES} o dicionário para de aceitar novos e devolve o
+ * próprio texto.
+ */
+public final class Dicionario {
+    public static final Dicionario CARGOS = new Dicionario();
+    public static final Dicionario MARCAS = new Dicionario();
+    public static final Dicionario MODELOS = new Dicionario();
+
+    public static final int MAX_VALORES = 4096;
+    public static final int SEM_CODIGO = -1;
+
+    private record Entrada(String valor, int codigo) {
+    }
+
+    private final Map<String, Entrada> entradas = new ConcurrentHashMap<>();
+    // valores por código; trocado (nunca alterado depois de publicado) a cada crescimento
+    private volatile String[] valores = new String[16];
+    private int quantidade;
+
+    /**
+     * Instância compartilhada com o mesmo texto
+     */
+    public String canonico(String valor) {
+        if (valor == null) {
+            return null;
+        }
+        Entrada entrada = registrar(valor);
+        return entrada == null ? valor : entrada.valor();
+    }
+
+    /**
+     * Código do valor, ou {@link #SEM_CODIGO} se o dicionário estiver cheio
+     */
+    public int codigo(String valor) {
+        Entrada entrada = registrar(valor);
+        return entrada == null ? SEM_CODIGO : entrada.codigo();
+    }
+
+    /**
+     * Texto de um código devolvido por {@link #codigo}
+     */
+    public String valor(int codigo) {
+        return valores[codigo];
+    }
+
+    public int size() {
+        return entradas.size();
+    }
+
+    private Entrada registrar(String valor) {
+        Entrada entrada = entradas.get(valor);
+        if (entrada != null) {
+            return entrada;
+        }
+        synchronized (this) {
+            entrada = entradas.get(valor);
+            if (entrada != null || quantidade == MAX_VALORES) {
+                return entrada;
+            }
+            String[] atuais = valores;
+            if (quantidade == atuais.length) {
+                atuais = Arrays.copyOf(atuais, atuais.length * 2);
+            } else {
+                atuais = atuais.clone();
+            }
+            atuais[quantidade] = valor;
+            // o array é publicado antes da entrada: quem obtém o código encontra o texto
+            valores = atuais;
+            entrada = new Entrada(valor, quantidade++);
+            entradas.put(valor, entrada);
+            return entrada;
+        }
+    }
+}
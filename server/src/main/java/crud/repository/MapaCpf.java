@@ -0,0 +1,222 @@
+package crud.repository;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+
+/**
+ * Mapa concorrente por CPF com chave long primitiva.
+ *
+ * <p>CPFs só com dígitos (até 17) viram um long que guarda também a quantidade de
+ * dígitos, então "042" e "42" continuam sendo chaves diferentes. Esses ficam em
+ * tabelas de endereçamento aberto (um array de longs e um de valores, sem nó por
+ * entrada), divididas em segmentos com um lock cada. Qualquer outro identificador
+ * vai para um ConcurrentHashMap comum.
+ *
+ * <p>Leituras não travam: os escritores publicam o valor antes da chave, e uma
+ * remoção só anula o valor (a chave fica como marca até a próxima reorganização).
+ * {@link #compute} e {@link #computeIfPresent} executam a função com o lock do
+ * segmento, então as operações sobre um mesmo CPF são serializadas, como no
+ * ConcurrentHashMap.
+ */
+final class MapaCpf<V> {
+    private static final int SEGMENTOS = 64;
+    private static final int CAPACIDADE_INICIAL = 64;
+    private static final int MAX_DIGITOS = 17;
+    private static final long VAZIO = 0;
+
+    private final Segmento<V>[] segmentos;
+    private final Map<String, V> outros = new ConcurrentHashMap<>();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    MapaCpf() {
+        segmentos = new Segmento[SEGMENTOS];
+        for (int i = 0; i < SEGMENTOS; i++) {
+            segmentos[i] = new Segmento<>();
+        }
+    }
+
+    /**
+     * Codifica o CPF como {@code (digitos << 57) | valor}, ou VAZIO se ele não for só dígitos
+     */
+    static long codificar(String cpf) {
+        int tamanho = cpf.length();
+        if (tamanho == 0 || tamanho > MAX_DIGITOS) {
+            return VAZIO;
+        }
+        long valor = 0;
+        for (int i = 0; i < tamanho; i++) {
+            char c = cpf.charAt(i);
+            if (c < '0' || c > '9') {
+                return VAZIO;
+            }
+            valor = valor * 10 + (c - '0');
+        }
+        return ((long) tamanho << 57) | valor;
+    }
+
+    private static long espalhar(long chave) {
+        chave ^= chave >>> 33;
+        chave *= 0xff51afd7ed558ccdL;
+        chave ^= chave >>> 33;
+        chave *= 0xc4ceb9fe1a85ec53L;
+        return chave ^ (chave >>> 33);
+    }
+
+    private Segmento<V> segmento(long hash) {
+        return segmentos[(int) (hash >>> 58) & (SEGMENTOS - 1)];
+    }
+
+    V get(String cpf) {
+        long chave = codificar(cpf);
+        if (chave == VAZIO) {
+            return outros.get(cpf);
+        }
+        long hash = espalhar(chave);
+        return segmento(hash).get(chave, hash);
+    }
+
+    boolean containsKey(String cpf) {
+        return get(cpf) != null;
+    }
+
+    /**
+     * Como ConcurrentHashMap.compute: null remove a entrada
+     */
+    V compute(String cpf, BiFunction<String, V, V> funcao) {
+        long chave = codificar(cpf);
+        if (chave == VAZIO) {
+            return outros.compute(cpf, funcao);
+        }
+        long hash = espalhar(chave);
+        return segmento(hash).compute(cpf, chave, hash, funcao, false);
+    }
+
+    /**
+     * Como ConcurrentHashMap.computeIfPresent: a função só roda se houver valor
+     */
+    V computeIfPresent(String cpf, BiFunction<String, V, V> funcao) {
+        long chave = codificar(cpf);
+        if (chave == VAZIO) {
+            return outros.computeIfPresent(cpf, funcao);
+        }
+        long hash = espalhar(chave);
+        return segmento(hash).compute(cpf, chave, hash, funcao, true);
+    }
+
+    int size() {
+        int total = outros.size();
+        for (Segmento<V> segmento : segmentos) {
+            total += segmento.quantidade;
+        }
+        return total;
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Tabela de endereçamento aberto (sondagem linear) protegida por um lock
+     */
+    private static final class Segmento<V> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile Tabela<V> tabela = new Tabela<>(CAPACIDADE_INICIAL);
+        private volatile int quantidade;
+        private int ocupados; // chaves na tabela, contando as removidas
+
+        V get(long chave, long hash) {
+            Tabela<V> t = tabela;
+            int mascara = t.chaves.length() - 1;
+            for (int i = (int) hash & mascara; ; i = (i + 1) & mascara) {
+                long atual = t.chaves.get(i);
+                if (atual == chave) {
+                    return t.valores.get(i);
+                }
+                if (atual == VAZIO) {
+                    return null;
+                }
+            }
+        }
+
+        V compute(String cpf, long chave, long hash, BiFunction<String, V, V> funcao, boolean soSePresente) {
+            lock.lock();
+            try {
+                Tabela<V> t = tabela;
+                int mascara = t.chaves.length() - 1;
+                int i = (int) hash & mascara;
+                long atual;
+                while ((atual = t.chaves.get(i)) != chave && atual != VAZIO) {
+                    i = (i + 1) & mascara;
+                }
+                V anterior = atual == chave ? t.valores.get(i) : null;
+                if (anterior == null && soSePresente) {
+                    return null;
+                }
+                V novo = funcao.apply(cpf, anterior);
+                if (novo == null) {
+                    if (anterior != null) {
+                        t.valores.set(i, null);
+                        quantidade--;
+                    }
+                    return null;
+                }
+                t.valores.set(i, novo);
+                if (anterior == null) {
+                    quantidade++;
+                }
+                if (atual == VAZIO) {
+                    // o valor é publicado antes da chave: quem acha a chave acha o valor
+                    t.chaves.set(i, chave);
+                    if (++ocupados > t.chaves.length() / 4 * 3) {
+                        reorganizar(t);
+                    }
+                }
+                return novo;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Copia as entradas vivas para uma tabela nova (maior, se precisar) e a publica.
+         * Leitores que ainda estejam na antiga continuam vendo um estado válido.
+         */
+        private void reorganizar(Tabela<V> antiga) {
+            int capacidade = antiga.chaves.length();
+            while (quantidade > capacidade / 2) {
+                capacidade *= 2;
+            }
+            Tabela<V> nova = new Tabela<>(capacidade);
+            int mascara = capacidade - 1;
+            for (int j = 0; j < antiga.chaves.length(); j++) {
+                V valor = antiga.valores.get(j);
+                if (valor == null) {
+                    continue;
+                }
+                long chave = antiga.chaves.get(j);
+                int i = (int) espalhar(chave) & mascara;
+                while (nova.chaves.get(i) != VAZIO) {
+                    i = (i + 1) & mascara;
+                }
+                nova.valores.set(i, valor);
+                nova.chaves.set(i, chave);
+            }
+            ocupados = quantidade;
+            tabela = nova;
+        }
+    }
+
+    private static final class Tabela<V> {
+        final AtomicLongArray chaves;
+        final AtomicReferenceArray<V> valores;
+
+        Tabela(int capacidade) {
+            chaves = new AtomicLongArray(capacidade);
+            valores = new AtomicReferenceArray<>(capacidade);
+        }
+    }
+}
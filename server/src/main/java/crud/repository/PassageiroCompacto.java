@@ -0,0 +1,117 @@
+package crud.repository;
+
+import crud.model.Passageiro;
+
+/**
+ * Passageiro cujos dados ficam em {@link RegistrosCompactos}: o objeto guarda só
+ * o CPF e o slot, e os campos são decodificados quando alguém os pede.
+ *
+ * <p>Quando sai do repositório (UPDATE, DELETE ou INSERT por cima), o registro é
+ * desanexado: os campos voltam para o objeto e o slot é liberado. Assim quem
+ * ainda tiver a referência (ex.: uma leitura em andamento, o desfazer de um
+ * BATCH) continua vendo os mesmos dados, como com um Passageiro comum.
+ *
+ * <p>Não guarda o texto de {@link #toDataString()} como as outras pessoas: ele é
+ * decodificado a cada chamada, para não trazer os dados de volta ao heap.
+ */
+final class PassageiroCompacto extends Passageiro {
+    private final RegistrosCompactos registros;
+    // -1 quando desanexado; alterado só com o lock de escrita de RegistrosCompactos
+    // (as leituras de lá o conferem com a validação do StampedLock)
+    int slot = -1;
+    // campos enquanto desanexado; protegidos pelo monitor do objeto
+    private String nomeDesanexado;
+    private String enderecoDesanexado;
+    private String poltronaDesanexada;
+
+    PassageiroCompacto(RegistrosCompactos registros, String cpf, String nome, String endereco, String poltrona) {
+        super(cpf, null, null, null);
+        this.registros = registros;
+        registros.anexar(this, nome, endereco, poltrona);
+    }
+
+    boolean pertenceA(RegistrosCompactos outros) {
+        return registros == outros;
+    }
+
+    /**
+     * Volta a guardar os campos em RegistrosCompactos (ex.: desfazer de um BATCH reinserindo a pessoa)
+     */
+    synchronized void reanexar() {
+        if (slot == -1) {
+            registros.anexar(this, nomeDesanexado, enderecoDesanexado, poltronaDesanexada);
+            nomeDesanexado = null;
+            enderecoDesanexado = null;
+            poltronaDesanexada = null;
+        }
+    }
+
+    synchronized void desanexar() {
+        String[] campos = registros.desanexar(this);
+        if (campos != null) {
+            nomeDesanexado = campos[0];
+            enderecoDesanexado = campos[1];
+            poltronaDesanexada = campos[2];
+        }
+    }
+
+    @Override
+    public String getNome() {
+        String valor = registros.campo(this, 0);
+        return valor != null ? valor : desanexado(0);
+    }
+
+    @Override
+    public String getEndereco() {
+        String valor = registros.campo(this, 1);
+        return valor != null ? valor : desanexado(1);
+    }
+
+    @Override
+    public String getPoltrona() {
+        String valor = registros.campo(this, 2);
+        return valor != null ? valor : desanexado(2);
+    }
+
+    /**
+     * Campo de um registro desanexado; com o monitor o slot não muda, então
+     * confere de novo (pode ter sido reanexado entre as duas leituras)
+     */
+    private synchronized String desanexado(int campo) {
+        if (slot != -1) {
+            return registros.campo(this, campo);
+        }
+        switch (campo) {
+            case 0:
+                return nomeDesanexado;
+            case 1:
+                return enderecoDesanexado;
+            default:
+                return poltronaDesanexada;
+        }
+    }
+
+    @Override
+    public String toDataString() {
+        String texto = registros.texto(this);
+        if (texto != null) {
+            return cpf + ";" + texto;
+        }
+        synchronized (this) {
+            if (slot != -1) {
+                return cpf + ";" + registros.texto(this);
+            }
+            return cpf + ";" + nomeDesanexado + ";" + enderecoDesanexado + ";" + poltronaDesanexada;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Passageiro{" +
+                "cpf='" + cpf + '\'' +
+                ", nome='" + getNome() + '\'' +
+                ", endereco='" + getEndereco() + '\'' +
+                ", poltrona='" + getPoltrona() + '\'' +
+                '}';
+    }
+}
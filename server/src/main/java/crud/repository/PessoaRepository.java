@@ -3,49 +3,145 @@ package crud.repository;
 import crud.model.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /**
  * Repo para gerenciar Pessoas (Tripulantes e Passageiros)
+ *
+ * <p>Além do mapa por CPF ({@link MapaCpf}), mantém índices ordenados por CPF
+ * (um geral e um por tipo), atualizados junto com cada inserção e remoção, para
+ * que as listagens sejam só uma iteração em ordem.
+ *
+ * <p>No modo compacto, passageiros são guardados em {@link RegistrosCompactos} e
+ * os mapas apontam para {@link PassageiroCompacto}, que só tem CPF e slot. A API
+ * não muda: quem recebe a pessoa lê os campos como de qualquer Passageiro.
  */
 public class PessoaRepository {
-    private final Map<String, Pessoa> pessoas;
+    // CPFs numéricos com chave long primitiva (ver MapaCpf)
+    private final MapaCpf<Pessoa> pessoas;
+    private final ConcurrentSkipListMap<String, Pessoa> porCpf = new ConcurrentSkipListMap<>();
+    private final Map<String, ConcurrentSkipListMap<String, Pessoa>> porTipo = new ConcurrentHashMap<>();
+    // Contadores por tipo, mantidos junto com os índices (o size() da skip list é linear)
+    private final Map<String, LongAdder> quantidadePorTipo = new ConcurrentHashMap<>();
+    // null fora do modo compacto
+    private final RegistrosCompactos passageirosCompactos;
+    private volatile BiConsumer<Pessoa, Pessoa> aoAtualizar = (anterior, nova) -> { };
+    private final Versoes versoes;
 
     public PessoaRepository() {
-        this.pessoas = new ConcurrentHashMap<>();
+        this(false);
     }
 
     /**
-     * Insere uma nova pessoa
+     * @param passageirosCompactos guarda os passageiros empacotados em bytes em vez de objetos
+     */
+    public PessoaRepository(boolean passageirosCompactos) {
+        this(passageirosCompactos, new Versoes());
+    }
+
+    PessoaRepository(boolean passageirosCompactos, Versoes versoes) {
+        this.pessoas = new MapaCpf<>();
+        this.passageirosCompactos = passageirosCompactos ? new RegistrosCompactos() : null;
+        this.versoes = versoes;
+    }
+
+    /**
+     * Chamado a cada UPDATE, ainda sob a serialização do CPF, com a instância
+     * antiga e a nova (o RepositoryManager usa para atualizar as tripulações)
+     */
+    public void setAoAtualizar(BiConsumer<Pessoa, Pessoa> aoAtualizar) {
+        this.aoAtualizar = aoAtualizar;
+    }
+
+    /**
+     * Insere uma nova pessoa (substitui a que tiver o mesmo CPF)
      */
     public void insert(Pessoa pessoa) {
-        pessoas.put(pessoa.getCpf(), pessoa);
+        Pessoa nova = canonizar(pessoa);
+        versoes.iniciarEscrita();
+        try {
+            // compute serializa as operações sobre o mesmo CPF, então mapa e índices mudam juntos
+            pessoas.compute(nova.getCpf(), (cpf, anterior) -> {
+                if (anterior == nova) {
+                    return anterior;
+                }
+                versoes.registrarPessoa(cpf, anterior);
+                if (anterior != null) {
+                    desindexar(anterior);
+                }
+                return indexar(armazenar(nova));
+            });
+        } finally {
+            versoes.terminarEscrita();
+        }
     }
 
     /**
-     * Atualiza uma pessoa existente baseado no tipo
+     * Usa no cargo a instância compartilhada do {@link Dicionario}
      */
-    public boolean update(String cpf, String nome, String endereco, String... extraParams) {
-        Pessoa pessoa = pessoas.get(cpf);
-        if (pessoa == null) {
-            return false;
+    private static Pessoa canonizar(Pessoa pessoa) {
+        if (pessoa instanceof Tripulante tripulante) {
+            String cargo = Dicionario.CARGOS.canonico(tripulante.getCargo());
+            if (cargo != tripulante.getCargo()) {
+                return tripulante.comDados(tripulante.getNome(), tripulante.getEndereco(), tripulante.getSalario(), cargo);
+            }
         }
+        return pessoa;
+    }
 
-        // Atualiza campos base
-        pessoa.setNome(nome);
-        pessoa.setEndereco(endereco);
-
-        // Atualiza campos específicos baseado no tipo
-        if (pessoa instanceof Tripulante && extraParams.length >= 2) {
-            Tripulante tripulante = (Tripulante) pessoa;
-            tripulante.setSalario(Double.parseDouble(extraParams[0]));
-            tripulante.setCargo(extraParams[1]);
-        } else if (pessoa instanceof Passageiro && extraParams.length >= 1) {
-            Passageiro passageiro = (Passageiro) pessoa;
-            passageiro.setPoltrona(extraParams[0]);
+    /**
+     * No modo compacto, troca o passageiro pela sua versão em RegistrosCompactos
+     */
+    private Pessoa armazenar(Pessoa pessoa) {
+        if (passageirosCompactos == null || !(pessoa instanceof Passageiro passageiro)) {
+            return pessoa;
+        }
+        if (pessoa instanceof PassageiroCompacto compacto && compacto.pertenceA(passageirosCompactos)) {
+            compacto.reanexar();
+            return compacto;
         }
+        return new PassageiroCompacto(passageirosCompactos, passageiro.getCpf(), passageiro.getNome(),
+                passageiro.getEndereco(), passageiro.getPoltrona());
+    }
 
-        return true;
+    /**
+     * Atualiza uma pessoa existente baseado no tipo.
+     *
+     * <p>A pessoa é imutável: o UPDATE monta uma instância nova e a troca no mapa
+     * dentro do compute do CPF. Leitores veem a versão anterior ou a nova, nunca
+     * uma mistura, e dois UPDATEs do mesmo CPF são aplicados em ordem (vale o
+     * último). Um salário inválido lança a exceção antes de qualquer troca.
+     */
+    public boolean update(String cpf, String nome, String endereco, String... extraParams) {
+        boolean[] atualizada = {false};
+        // a escrita cobre também a troca nas tripulações, que vira parte da mesma versão
+        versoes.iniciarEscrita();
+        try {
+            pessoas.computeIfPresent(cpf, (chave, atual) -> {
+                Pessoa nova;
+                // Atualiza campos específicos baseado no tipo
+                if (atual instanceof Tripulante tripulante && extraParams.length >= 2) {
+                    nova = tripulante.comDados(nome, endereco, Double.parseDouble(extraParams[0]),
+                            Dicionario.CARGOS.canonico(extraParams[1]));
+                } else if (atual instanceof Passageiro passageiro && extraParams.length >= 1) {
+                    nova = passageiro.comDados(nome, endereco, extraParams[0]);
+                } else {
+                    nova = atual.comDados(nome, endereco);
+                }
+                versoes.registrarPessoa(chave, atual);
+                desindexar(atual);
+                Pessoa armazenada = indexar(armazenar(nova));
+                aoAtualizar.accept(atual, armazenada);
+                atualizada[0] = true;
+                return armazenada;
+            });
+        } finally {
+            versoes.terminarEscrita();
+        }
+        return atualizada[0];
     }
 
     /**
@@ -55,30 +151,113 @@ public class PessoaRepository {
         return pessoas.get(cpf);
     }
 
+    /**
+     * Executa a ação com a versão atual da pessoa, sem que um UPDATE do mesmo CPF
+     * a troque no meio (ex.: colocar a pessoa em uma tripulação)
+     *
+     * @return false se a pessoa não existe
+     */
+    public boolean comPessoa(String cpf, Consumer<Pessoa> acao) {
+        boolean[] encontrada = {false};
+        // a ação costuma escrever em outro repositório: a escrita começa antes do lock do CPF
+        versoes.iniciarEscrita();
+        try {
+            pessoas.computeIfPresent(cpf, (chave, atual) -> {
+                acao.accept(atual);
+                encontrada[0] = true;
+                return atual;
+            });
+        } finally {
+            versoes.terminarEscrita();
+        }
+        return encontrada[0];
+    }
+
     /**
      * Remove uma pessoa pelo CPF
      */
     public boolean delete(String cpf) {
-        return pessoas.remove(cpf) != null;
+        boolean[] removida = {false};
+        versoes.iniciarEscrita();
+        try {
+            pessoas.computeIfPresent(cpf, (chave, atual) -> {
+                versoes.registrarPessoa(chave, atual);
+                desindexar(atual);
+                removida[0] = true;
+                return null;
+            });
+        } finally {
+            versoes.terminarEscrita();
+        }
+        return removida[0];
+    }
+
+    private Pessoa indexar(Pessoa pessoa) {
+        porCpf.put(pessoa.getCpf(), pessoa);
+        indiceDoTipo(pessoa.getTipo()).put(pessoa.getCpf(), pessoa);
+        contadorDoTipo(pessoa.getTipo()).increment();
+        return pessoa;
+    }
+
+    private void desindexar(Pessoa pessoa) {
+        porCpf.remove(pessoa.getCpf(), pessoa);
+        indiceDoTipo(pessoa.getTipo()).remove(pessoa.getCpf(), pessoa);
+        contadorDoTipo(pessoa.getTipo()).decrement();
+        if (pessoa instanceof PassageiroCompacto compacto) {
+            // quem ainda tiver a referência continua com os dados; o slot fica livre
+            compacto.desanexar();
+        }
+    }
+
+    private ConcurrentSkipListMap<String, Pessoa> indiceDoTipo(String tipo) {
+        return porTipo.computeIfAbsent(tipo, t -> new ConcurrentSkipListMap<>());
     }
 
     /**
-     * Lista todas as pessoas
+     * Índice do tipo (já em maiúsculas), vazio se não houver pessoas dele
+     */
+    NavigableMap<String, Pessoa> indice(String tipo) {
+        ConcurrentSkipListMap<String, Pessoa> indice = porTipo.get(tipo);
+        return indice == null ? Collections.emptyNavigableMap() : indice;
+    }
+
+    private LongAdder contadorDoTipo(String tipo) {
+        return quantidadePorTipo.computeIfAbsent(tipo, t -> new LongAdder());
+    }
+
+    /**
+     * Lista todas as pessoas, em ordem de CPF
      */
     public List<Pessoa> list() {
-        return pessoas.values().stream()
-                .sorted(Comparator.comparing(Pessoa::getCpf))
-                .collect(Collectors.toList());
+        return new ArrayList<>(porCpf.values());
     }
 
     /**
-     * Lista pessoas por tipo
+     * Lista pessoas por tipo, em ordem de CPF
      */
     public List<Pessoa> listByType(String tipo) {
-        return pessoas.values().stream()
-                .filter(p -> p.getTipo().equals(tipo.toUpperCase()))
-                .sorted(Comparator.comparing(Pessoa::getCpf))
-                .collect(Collectors.toList());
+        ConcurrentSkipListMap<String, Pessoa> indice = porTipo.get(tipo.toUpperCase());
+        return indice == null ? new ArrayList<>() : new ArrayList<>(indice.values());
+    }
+
+    /**
+     * Página de pessoas de um tipo: até limite pessoas com CPF maior que aposCpf
+     * (ou desde o início, se aposCpf for null), em ordem de CPF.
+     */
+    public List<Pessoa> listByType(String tipo, String aposCpf, int limite) {
+        List<Pessoa> pagina = new ArrayList<>(Math.min(limite, 1024));
+        ConcurrentSkipListMap<String, Pessoa> indice = porTipo.get(tipo.toUpperCase());
+        if (indice == null) {
+            return pagina;
+        }
+        Map<String, Pessoa> restante = aposCpf == null ? indice : indice.tailMap(aposCpf, false);
+        for (Pessoa pessoa : restante.values()) {
+            if (pagina.size() == limite) {
+                break;
+            }
+            pagina.add(pessoa);
+        }
+        return pagina;
     }
 
     /**
@@ -95,6 +274,14 @@ public class PessoaRepository {
         return pessoas.size();
     }
 
+    /**
+     * Retorna a quantidade de pessoas de um tipo, sem percorrer o repositório
+     */
+    public int countByType(String tipo) {
+        LongAdder contador = quantidadePorTipo.get(tipo.toUpperCase());
+        return contador == null ? 0 : contador.intValue();
+    }
+
     /**
      * Verifica se uma pessoa existe
      */
@@ -0,0 +1,377 @@
+package crud.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Dados de passageiros empacotados em páginas de bytes, fora de objetos.
+ *
+ * <p>Cada registro ocupa um slot (índice int) e é gravado como
+ * {@code slot tamanho nomeLen enderecoLen} (varints) seguido de
+ * {@code nome;endereco;poltrona} em UTF-8, já no formato do protocolo. Um
+ * registro liberado deixa seus bytes como lixo; quando o lixo passa do que está
+ * vivo, cada remoção compacta uma página (a com mais lixo): os registros vivos
+ * dela são copiados para a página atual e ela é liberada. Assim a pausa de uma
+ * remoção fica limitada a uma página, qualquer que seja o total.
+ * O slot não muda com isso, então quem guarda o slot continua válido.
+ *
+ * <p>Escritas usam o lock de escrita. Leituras não travam: localizam o registro
+ * (slot, endereço, página) com uma leitura otimista do StampedLock e, se ela for
+ * válida, decodificam os bytes já sem lock, porque os bytes de um registro gravado
+ * nunca mudam (uma página liberada é descartada, não reaproveitada). Só quando uma
+ * escrita cruza a localização a leitura a refaz com o lock de leitura.
+ */
+final class RegistrosCompactos {
+    private static final int TAMANHO_PAGINA = 1 << 20;
+    private static final int LIVRE = -1;
+
+    private final StampedLock lock = new StampedLock();
+    private byte[][] paginas = new byte[16][];  // null quando a página foi liberada
+    private int[] usados = new int[16];        // por página: bytes gravados
+    private int[] vivos = new int[16];         // por página: bytes de registros vivos
+    private int quantidadePaginas;
+    private int[] paginasLivres = new int[16];
+    private int quantidadePaginasLivres;
+    private int paginaAtual = -1;
+    private int posicao = TAMANHO_PAGINA;      // próximo byte livre na página atual
+    private long[] enderecos = new long[1024]; // por slot: (página << 32) | deslocamento do cabeçalho
+    private int proximoSlot;
+    private int[] livres = new int[64];
+    private int quantidadeLivres;
+    private long bytesVivos;
+    private long bytesMortos;
+
+    // ========== ESCRITA ==========
+
+    /**
+     * Grava os campos do passageiro no slot do registro, que passa a ser dele
+     */
+    void anexar(PassageiroCompacto registro, String nome, String endereco, String poltrona) {
+        byte[] dados = codificar(nome, endereco, poltrona);
+        long stamp = lock.writeLock();
+        try {
+            int slot = novoSlot();
+            enderecos[slot] = gravar(slot, dados, 0, dados.length);
+            registro.slot = slot;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Libera o slot do registro, devolvendo os campos que estavam nele
+     * ({@code nome, endereco, poltrona}), ou null se já estava desanexado
+     */
+    String[] desanexar(PassageiroCompacto registro) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = registro.slot;
+            if (slot == LIVRE) {
+                return null;
+            }
+            long endereco = enderecos[slot];
+            String[] campos = lerCampos(paginas[(int) (endereco >>> 32)], (int) endereco);
+            descartar(slot, endereco);
+            enderecos[slot] = LIVRE;
+            registro.slot = LIVRE;
+            if (quantidadeLivres == livres.length) {
+                livres = Arrays.copyOf(livres, livres.length * 2);
+            }
+            livres[quantidadeLivres++] = slot;
+            compactarSeNecessario();
+            return campos;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private int novoSlot() {
+        if (quantidadeLivres > 0) {
+            return livres[--quantidadeLivres];
+        }
+        if (proximoSlot == enderecos.length) {
+            enderecos = Arrays.copyOf(enderecos, enderecos.length * 2);
+        }
+        return proximoSlot++;
+    }
+
+    /**
+     * Grava o slot e o registro (dados[inicio, inicio + tamanho)), devolvendo o
+     * endereço do cabeçalho do registro
+     */
+    private long gravar(int slot, byte[] dados, int inicio, int tamanho) {
+        int total = tamanhoVarint(slot) + tamanho;
+        int pagina;
+        if (total > TAMANHO_PAGINA - posicao) {
+            if (total > TAMANHO_PAGINA / 4) {
+                // registro grande: página própria, sem abandonar a atual
+                pagina = novaPagina(total);
+                return gravar(pagina, 0, slot, dados, inicio, tamanho);
+            }
+            paginaAtual = novaPagina(TAMANHO_PAGINA);
+            posicao = 0;
+        }
+        long endereco = gravar(paginaAtual, posicao, slot, dados, inicio, tamanho);
+        posicao += total;
+        return endereco;
+    }
+
+    private long gravar(int pagina, int pos, int slot, byte[] dados, int inicio, int tamanho) {
+        byte[] destino = paginas[pagina];
+        int cabecalho = gravarVarint(destino, pos, slot);
+        System.arraycopy(dados, inicio, destino, cabecalho, tamanho);
+        int total = cabecalho - pos + tamanho;
+        usados[pagina] += total;
+        vivos[pagina] += total;
+        bytesVivos += total;
+        return ((long) pagina << 32) | cabecalho;
+    }
+
+    private int novaPagina(int tamanho) {
+        int pagina;
+        if (quantidadePaginasLivres > 0) {
+            pagina = paginasLivres[--quantidadePaginasLivres];
+        } else {
+            if (quantidadePaginas == paginas.length) {
+                paginas = Arrays.copyOf(paginas, paginas.length * 2);
+                usados = Arrays.copyOf(usados, paginas.length);
+                vivos = Arrays.copyOf(vivos, paginas.length);
+            }
+            pagina = quantidadePaginas++;
+        }
+        paginas[pagina] = new byte[tamanho];
+        usados[pagina] = 0;
+        vivos[pagina] = 0;
+        return pagina;
+    }
+
+    private void descartar(int slot, long endereco) {
+        int pagina = (int) (endereco >>> 32);
+        int tamanho = tamanhoVarint(slot) + tamanhoRegistro(endereco);
+        vivos[pagina] -= tamanho;
+        bytesVivos -= tamanho;
+        bytesMortos += tamanho;
+        if (vivos[pagina] == 0 && pagina != paginaAtual) {
+            liberarPagina(pagina);
+        }
+    }
+
+    private void liberarPagina(int pagina) {
+        bytesMortos -= usados[pagina] - vivos[pagina];
+        paginas[pagina] = null;
+        usados[pagina] = 0;
+        vivos[pagina] = 0;
+        if (quantidadePaginasLivres == paginasLivres.length) {
+            paginasLivres = Arrays.copyOf(paginasLivres, paginasLivres.length * 2);
+        }
+        paginasLivres[quantidadePaginasLivres++] = pagina;
+    }
+
+    /**
+     * Compacta a página com mais lixo, se o lixo total passou do que está vivo.
+     * Chamado com o lock de escrita, a cada remoção.
+     */
+    private void compactarSeNecessario() {
+        if (bytesMortos < TAMANHO_PAGINA || bytesMortos < bytesVivos) {
+            return;
+        }
+        int vitima = -1;
+        int maiorLixo = 0;
+        for (int p = 0; p < quantidadePaginas; p++) {
+            int lixo = usados[p] - vivos[p];
+            if (paginas[p] != null && p != paginaAtual && lixo > maiorLixo) {
+                vitima = p;
+                maiorLixo = lixo;
+            }
+        }
+        if (vitima < 0) {
+            return;
+        }
+
+        // percorre a página: cada registro cujo slot ainda aponta para ele é copiado
+        byte[] pagina = paginas[vitima];
+        int[] pos = {0};
+        while (pos[0] < usados[vitima]) {
+            int slot = lerVarint(pagina, pos);
+            int inicio = pos[0];
+            int tamanho = tamanhoRegistro(pagina, inicio);
+            if (enderecos[slot] == (((long) vitima << 32) | inicio)) {
+                enderecos[slot] = gravar(slot, pagina, inicio, tamanho);
+            }
+            pos[0] = inicio + tamanho;
+        }
+        // os vivos da página foram contados de novo nas cópias
+        bytesVivos -= vivos[vitima];
+        liberarPagina(vitima);
+    }
+
+    // ========== LEITURA ==========
+
+    // localização de um registro: página e posição do cabeçalho
+    private record Local(byte[] pagina, int cabecalho) {
+    }
+
+    /**
+     * {@code nome;endereco;poltrona} do registro, ou null se ele já foi desanexado
+     */
+    String texto(PassageiroCompacto registro) {
+        Local local = localizar(registro);
+        if (local == null) {
+            return null;
+        }
+        byte[] pagina = local.pagina();
+        int[] pos = {local.cabecalho()};
+        int tamanho = lerVarint(pagina, pos);
+        lerVarint(pagina, pos);
+        lerVarint(pagina, pos);
+        return new String(pagina, pos[0], tamanho, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Um campo do registro (0 nome, 1 endereco, 2 poltrona), ou null se ele já foi desanexado
+     */
+    String campo(PassageiroCompacto registro, int campo) {
+        Local local = localizar(registro);
+        if (local == null) {
+            return null;
+        }
+        byte[] pagina = local.pagina();
+        int[] pos = {local.cabecalho()};
+        int tamanho = lerVarint(pagina, pos);
+        int nomeLen = lerVarint(pagina, pos);
+        int enderecoLen = lerVarint(pagina, pos);
+        int inicio = pos[0];
+        switch (campo) {
+            case 0:
+                return new String(pagina, inicio, nomeLen, StandardCharsets.UTF_8);
+            case 1:
+                return new String(pagina, inicio + nomeLen + 1, enderecoLen, StandardCharsets.UTF_8);
+            default:
+                int poltrona = nomeLen + enderecoLen + 2;
+                return new String(pagina, inicio + poltrona, tamanho - poltrona, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Onde está o registro agora, ou null se ele já foi desanexado. Tenta sem lock;
+     * o lock de leitura só entra se uma escrita mudou algo no meio.
+     */
+    private Local localizar(PassageiroCompacto registro) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            Local local = localizarSemLock(registro);
+            if (lock.validate(stamp)) {
+                return local;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return localizarSemLock(registro);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Sem lock os campos podem estar no meio de uma escrita; o resultado só vale se a
+     * leitura otimista for validada depois, então aqui basta não sair dos arrays
+     */
+    private Local localizarSemLock(PassageiroCompacto registro) {
+        int slot = registro.slot;
+        long[] enderecosAtuais = enderecos;
+        if (slot == LIVRE || slot < 0 || slot >= enderecosAtuais.length) {
+            return null;
+        }
+        long endereco = enderecosAtuais[slot];
+        int pagina = (int) (endereco >>> 32);
+        byte[][] paginasAtuais = paginas;
+        if (pagina < 0 || pagina >= paginasAtuais.length || paginasAtuais[pagina] == null) {
+            return null;
+        }
+        return new Local(paginasAtuais[pagina], (int) endereco);
+    }
+
+    /**
+     * {@code nome, endereco, poltrona} separados pelos tamanhos do cabeçalho
+     */
+    private static String[] lerCampos(byte[] pagina, int cabecalho) {
+        int[] pos = {cabecalho};
+        int tamanho = lerVarint(pagina, pos);
+        int nomeLen = lerVarint(pagina, pos);
+        int enderecoLen = lerVarint(pagina, pos);
+        int inicio = pos[0];
+        int poltrona = nomeLen + enderecoLen + 2;
+        return new String[] {
+                new String(pagina, inicio, nomeLen, StandardCharsets.UTF_8),
+                new String(pagina, inicio + nomeLen + 1, enderecoLen, StandardCharsets.UTF_8),
+                new String(pagina, inicio + poltrona, tamanho - poltrona, StandardCharsets.UTF_8)
+        };
+    }
+
+    private int tamanhoRegistro(long endereco) {
+        return tamanhoRegistro(paginas[(int) (endereco >>> 32)], (int) endereco);
+    }
+
+    /**
+     * Bytes ocupados pelo registro, cabeçalho incluído
+     */
+    private static int tamanhoRegistro(byte[] pagina, int inicio) {
+        int[] pos = {inicio};
+        int tamanho = lerVarint(pagina, pos);
+        lerVarint(pagina, pos);
+        lerVarint(pagina, pos);
+        return pos[0] - inicio + tamanho;
+    }
+
+    // ========== CODIFICAÇÃO ==========
+
+    private static byte[] codificar(String nome, String endereco, String poltrona) {
+        byte[] nomeBytes = nome.getBytes(StandardCharsets.UTF_8);
+        byte[] enderecoBytes = endereco.getBytes(StandardCharsets.UTF_8);
+        byte[] poltronaBytes = poltrona.getBytes(StandardCharsets.UTF_8);
+        int tamanho = nomeBytes.length + enderecoBytes.length + poltronaBytes.length + 2;
+
+        byte[] dados = new byte[tamanhoVarint(tamanho) + tamanhoVarint(nomeBytes.length)
+                + tamanhoVarint(enderecoBytes.length) + tamanho];
+        int pos = gravarVarint(dados, 0, tamanho);
+        pos = gravarVarint(dados, pos, nomeBytes.length);
+        pos = gravarVarint(dados, pos, enderecoBytes.length);
+        System.arraycopy(nomeBytes, 0, dados, pos, nomeBytes.length);
+        pos += nomeBytes.length;
+        dados[pos++] = ';';
+        System.arraycopy(enderecoBytes, 0, dados, pos, enderecoBytes.length);
+        pos += enderecoBytes.length;
+        dados[pos++] = ';';
+        System.arraycopy(poltronaBytes, 0, dados, pos, poltronaBytes.length);
+        return dados;
+    }
+
+    private static int tamanhoVarint(int valor) {
+        int bytes = 1;
+        while ((valor >>>= 7) != 0) {
+            bytes++;
+        }
+        return bytes;
+    }
+
+    private static int gravarVarint(byte[] destino, int pos, int valor) {
+        while ((valor & ~0x7F) != 0) {
+            destino[pos++] = (byte) ((valor & 0x7F) | 0x80);
+            valor >>>= 7;
+        }
+        destino[pos++] = (byte) valor;
+        return pos;
+    }
+
+    private static int lerVarint(byte[] origem, int[] pos) {
+        int valor = 0;
+        for (int deslocamento = 0; ; deslocamento += 7) {
+            byte b = origem[pos[0]++];
+            valor |= (b & 0x7F) << deslocamento;
+            if (b >= 0) {
+                return valor;
+            }
+        }
+    }
+}
@@ -3,10 +3,21 @@ package crud.repository;
 public class RepositoryManager {
     private final PessoaRepository pessoaRepository;
     private final AviaoRepository aviaoRepository;
+    // compartilhado pelos dois repositórios: uma Visao corta os dois no mesmo instante
+    private final Versoes versoes = new Versoes();
 
     public RepositoryManager() {
-        this.pessoaRepository = new PessoaRepository();
-        this.aviaoRepository = new AviaoRepository();
+        this(false);
+    }
+
+    /**
+     * @param passageirosCompactos guarda os passageiros empacotados em bytes (ver PessoaRepository)
+     */
+    public RepositoryManager(boolean passageirosCompactos) {
+        this.pessoaRepository = new PessoaRepository(passageirosCompactos, versoes);
+        this.aviaoRepository = new AviaoRepository(versoes);
+        // pessoas são imutáveis: um UPDATE troca a instância também nas tripulações
+        this.pessoaRepository.setAoAtualizar(aviaoRepository::substituirTripulante);
     }
 
     public PessoaRepository getPessoaRepository() {
@@ -17,15 +28,51 @@ public class RepositoryManager {
         return aviaoRepository;
     }
 
+    /**
+     * Remove a pessoa e a tira da tripulação dos aviões em que estava,
+     * usando o índice reverso do AviaoRepository
+     */
+    public boolean deletePessoa(String cpf) {
+        // uma só escrita: nenhuma visão pega a pessoa removida ainda em uma tripulação
+        versoes.iniciarEscrita();
+        try {
+            if (!pessoaRepository.delete(cpf)) {
+                return false;
+            }
+            aviaoRepository.removerDeTodos(cpf);
+            return true;
+        } finally {
+            versoes.terminarEscrita();
+        }
+    }
+
+    /**
+     * Muda a cada escrita em qualquer um dos repositórios (no início e no fim dela)
+     */
+    public long getVersao() {
+        return versoes.versao();
+    }
+
+    /**
+     * Abre uma leitura consistente dos dois repositórios (fechar depois de usar)
+     */
+    public Visao abrirVisao() {
+        return new Visao(pessoaRepository, aviaoRepository, versoes);
+    }
+
     /**
      * Obtém estatísticas gerais
      */
     public String getEstatsticas() {
         int totalPessoas = pessoaRepository.size();
         int totalAvioes = aviaoRepository.size();
-        int tripulantes = pessoaRepository.listByType("TRIPULANTE").size();
-        int passageiros = pessoaRepository.listByType("PASSAGEIRO").size();
+        int tripulantes = pessoaRepository.countByType("TRIPULANTE");
+        int passageiros = pessoaRepository.countByType("PASSAGEIRO");
+
+        return formatarEstatisticas(totalPessoas, tripulantes, passageiros, totalAvioes);
+    }
 
+    public static String formatarEstatisticas(int totalPessoas, int tripulantes, int passageiros, int totalAvioes) {
         return String.format("Pessoas: %d (Tripulantes: %d, Passageiros: %d), Aviões: %d",
                 totalPessoas, tripulantes, passageiros, totalAvioes);
     }
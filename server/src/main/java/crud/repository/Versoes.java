@@ -0,0 +1,144 @@
+package crud.repository;
+
+import crud.model.Aviao;
+import crud.model.Pessoa;
+
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Versões dos repositórios para leituras consistentes ({@link Visao}).
+ *
+ * <p>Os repositórios guardam só a versão atual. Quando uma leitura abre, ela faz
+ * um corte: espera as escritas em andamento terminarem (as escritas seguram o
+ * lado compartilhado de um ReadWriteLock durante a operação inteira, a leitura
+ * pega o lado exclusivo só nesse instante) e começa uma nova {@link Epoca}.
+ * Daí em diante, a primeira escrita de cada chave guarda na época o valor que a
+ * chave tinha antes de mudar, ou seja, o valor no corte. A leitura percorre os
+ * índices atuais e, nas chaves que mudaram, usa o valor guardado.
+ *
+ * <p>Escritas nunca esperam a leitura terminar, e sem leituras abertas não há
+ * registro nenhum. Uma época fica viva enquanto alguma leitura a alcança.
+ *
+ * <p>Também conta as escritas, no início e no fim de cada uma: se {@link #versao()}
+ * deu o mesmo valor antes e depois de uma leitura, nenhuma escrita começou ou
+ * terminou no meio (usado pelo cache de listagens).
+ */
+final class Versoes {
+    /** Valor guardado para uma chave que não existia no corte (os mapas não aceitam null) */
+    static final Object AUSENTE = new Object();
+
+    /**
+     * Valores no corte das chaves alteradas depois dele; a primeira escrita de cada chave vence.
+     * Ordenados pela chave, para a leitura intercalá-los com os índices.
+     */
+    static final class Epoca {
+        final ConcurrentNavigableMap<String, Object> pessoas = new ConcurrentSkipListMap<>();
+        final ConcurrentNavigableMap<AviaoKey, Object> avioes = new ConcurrentSkipListMap<>();
+        // época do corte seguinte, se houver
+        volatile Epoca proxima;
+    }
+
+    private final ReentrantReadWriteLock portao = new ReentrantReadWriteLock();
+    // protegidos pelo portão: alterados com o lado exclusivo, lidos pelas escritas com o compartilhado
+    private Epoca atual;
+    private int leituras;
+    private final LongAdder escritas = new LongAdder();
+
+    /**
+     * Envolve cada operação de escrita, da primeira alteração à última (pode ser aninhada)
+     */
+    void iniciarEscrita() {
+        portao.readLock().lock();
+        escritas.increment();
+    }
+
+    void terminarEscrita() {
+        escritas.increment();
+        portao.readLock().unlock();
+    }
+
+    long versao() {
+        return escritas.sum();
+    }
+
+    /**
+     * Corte para uma leitura: devolve a época que registra o que mudar depois dele.
+     * noCorte roda no corte, sem nenhuma escrita em andamento (ex.: ler contadores).
+     */
+    Epoca fixar(Runnable noCorte) {
+        portao.writeLock().lock();
+        try {
+            noCorte.run();
+            Epoca nova = new Epoca();
+            if (atual != null) {
+                atual.proxima = nova;
+            }
+            atual = nova;
+            leituras++;
+            return nova;
+        } finally {
+            portao.writeLock().unlock();
+        }
+    }
+
+    void soltar() {
+        portao.writeLock().lock();
+        try {
+            if (--leituras == 0) {
+                atual = null;
+            }
+        } finally {
+            portao.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Chamado com a pessoa ainda no valor anterior, serializado pelo CPF
+     */
+    void registrarPessoa(String cpf, Pessoa anterior) {
+        Epoca epoca = atual;
+        if (epoca != null) {
+            epoca.pessoas.putIfAbsent(cpf, anterior == null ? AUSENTE : anterior);
+        }
+    }
+
+    /**
+     * Chamado antes de alterar o avião da chave (ou a chave), com a listra ou o
+     * lock do avião. O avião é mutável, então guarda uma cópia.
+     */
+    void registrarAviao(AviaoKey key, Aviao anterior) {
+        Epoca epoca = atual;
+        if (epoca != null && !epoca.avioes.containsKey(key)) {
+            epoca.avioes.putIfAbsent(key, anterior == null ? AUSENTE : anterior.copia());
+        }
+    }
+
+    /**
+     * Valor da pessoa no corte da época: a pessoa, AUSENTE, ou null se não mudou desde então
+     */
+    static Object pessoaNoCorte(Epoca desde, String cpf) {
+        for (Epoca epoca = desde; epoca != null; epoca = epoca.proxima) {
+            Object valor = epoca.pessoas.get(cpf);
+            if (valor != null) {
+                return valor;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Como {@link #pessoaNoCorte}, para aviões
+     */
+    static Object aviaoNoCorte(Epoca desde, AviaoKey key) {
+        for (Epoca epoca = desde; epoca != null; epoca = epoca.proxima) {
+            Object valor = epoca.avioes.get(key);
+            if (valor != null) {
+                return valor;
+            }
+        }
+        return null;
+    }
+}
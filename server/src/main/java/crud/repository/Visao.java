@@ -0,0 +1,174 @@
+package crud.repository;
+
+import crud.model.Aviao;
+import crud.model.Pessoa;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * Leitura dos repositórios fixada em um instante (ver {@link Versoes}): tudo que
+ * sai da mesma visão reflete o mesmo conjunto de escritas, sem travar quem
+ * escreve. Deve ser fechada; enquanto aberta, as escritas guardam os valores
+ * anteriores das chaves que alteram.
+ *
+ * <p>Os registros são entregues um por vez, percorrendo os índices atuais: nada é
+ * copiado além do que as escritas guardaram, então a memória não cresce com o
+ * tamanho dos repositórios. As quantidades são lidas dos contadores no corte.
+ */
+public final class Visao implements AutoCloseable {
+    /**
+     * Recebe os registros da visão, em ordem
+     */
+    public interface Destino<T> {
+        void aceitar(T valor) throws IOException;
+    }
+
+    private final PessoaRepository pessoaRepository;
+    private final AviaoRepository aviaoRepository;
+    private final Versoes versoes;
+    private final Versoes.Epoca epoca;
+    // contadores no corte
+    private int tripulantes;
+    private int passageiros;
+    private int avioes;
+    private boolean fechada;
+
+    Visao(PessoaRepository pessoaRepository, AviaoRepository aviaoRepository, Versoes versoes) {
+        this.pessoaRepository = pessoaRepository;
+        this.aviaoRepository = aviaoRepository;
+        this.versoes = versoes;
+        this.epoca = versoes.fixar(this::contar);
+    }
+
+    private void contar() {
+        tripulantes = pessoaRepository.countByType("TRIPULANTE");
+        passageiros = pessoaRepository.countByType("PASSAGEIRO");
+        avioes = aviaoRepository.size();
+    }
+
+    /**
+     * Quantidade de pessoas do tipo no instante da visão
+     */
+    public int quantidade(String tipo) {
+        return switch (tipo.toUpperCase()) {
+            case "TRIPULANTE" -> tripulantes;
+            case "PASSAGEIRO" -> passageiros;
+            default -> 0;
+        };
+    }
+
+    /**
+     * Quantidade de aviões no instante da visão
+     */
+    public int quantidadeAvioes() {
+        return avioes;
+    }
+
+    /**
+     * Pessoas do tipo no instante da visão, em ordem de CPF
+     */
+    public void pessoas(String tipo, Destino<Pessoa> destino) throws IOException {
+        String nomeTipo = tipo.toUpperCase();
+        String anterior = null;
+        for (Map.Entry<String, Pessoa> entrada : pessoaRepository.indice(nomeTipo).entrySet()) {
+            String cpf = entrada.getKey();
+            pessoasForaDoIndice(anterior, cpf, nomeTipo, destino);
+            Object noCorte = Versoes.pessoaNoCorte(epoca, cpf);
+            if (noCorte == null) {
+                destino.aceitar(entrada.getValue());
+            } else if (noCorte instanceof Pessoa pessoa && pessoa.getTipo().equals(nomeTipo)) {
+                destino.aceitar(pessoa);
+            }
+            anterior = cpf;
+        }
+        pessoasForaDoIndice(anterior, null, nomeTipo, destino);
+    }
+
+    /**
+     * Pessoas do tipo no corte que a iteração não trouxe entre dois CPFs (ex.:
+     * removidas antes de ela passar). Uma chave ausente quando a iteração passou
+     * foi alterada antes, então já está registrada.
+     */
+    private void pessoasForaDoIndice(String de, String ate, String nomeTipo, Destino<Pessoa> destino)
+            throws IOException {
+        for (String cpf : alteradasEntre(e -> e.pessoas, de, ate)) {
+            if (Versoes.pessoaNoCorte(epoca, cpf) instanceof Pessoa pessoa && pessoa.getTipo().equals(nomeTipo)) {
+                destino.aceitar(pessoa);
+            }
+        }
+    }
+
+    /**
+     * Aviões no instante da visão, ordenados por modelo, ano e marca, entregues como
+     * ler os extrai. ler deve montar um valor que não muda depois (ex.:
+     * {@link Aviao#toFullDataString()}): no avião atual ela roda antes de conferir
+     * se ele foi alterado depois do corte, e só os alterados foram copiados.
+     */
+    public <T> void avioes(Function<Aviao, T> ler, Destino<T> destino) throws IOException {
+        AviaoKey anterior = null;
+        for (Map.Entry<AviaoKey, Aviao> entrada : aviaoRepository.ordenados().entrySet()) {
+            AviaoKey key = entrada.getKey();
+            avioesForaDoIndice(anterior, key, ler, destino);
+            // lê antes de conferir: se o avião mudar depois, o valor anterior já está registrado
+            T valor = ler.apply(entrada.getValue());
+            Object noCorte = Versoes.aviaoNoCorte(epoca, key);
+            if (noCorte == null) {
+                destino.aceitar(valor);
+            } else if (noCorte instanceof Aviao aviao) {
+                destino.aceitar(ler.apply(aviao));
+            }
+            anterior = key;
+        }
+        avioesForaDoIndice(anterior, null, ler, destino);
+    }
+
+    private <T> void avioesForaDoIndice(AviaoKey de, AviaoKey ate, Function<Aviao, T> ler, Destino<T> destino)
+            throws IOException {
+        for (AviaoKey key : alteradasEntre(e -> e.avioes, de, ate)) {
+            if (Versoes.aviaoNoCorte(epoca, key) instanceof Aviao aviao) {
+                destino.aceitar(ler.apply(aviao));
+            }
+        }
+    }
+
+    /**
+     * Chaves registradas desde o corte entre de e ate (exclusivos; null sem limite),
+     * em ordem e sem repetição entre as épocas
+     */
+    private <K extends Comparable<? super K>> Collection<K> alteradasEntre(
+            Function<Versoes.Epoca, NavigableMap<K, Object>> registro, K de, K ate) {
+        Set<K> chaves = null;
+        for (Versoes.Epoca e = epoca; e != null; e = e.proxima) {
+            NavigableMap<K, Object> faixa = entre(registro.apply(e), de, ate);
+            if (!faixa.isEmpty()) {
+                if (chaves == null) {
+                    chaves = new TreeSet<>();
+                }
+                chaves.addAll(faixa.keySet());
+            }
+        }
+        return chaves == null ? List.of() : chaves;
+    }
+
+    private static <K> NavigableMap<K, Object> entre(NavigableMap<K, Object> mapa, K de, K ate) {
+        if (de == null) {
+            return ate == null ? mapa : mapa.headMap(ate, false);
+        }
+        return ate == null ? mapa.tailMap(de, false) : mapa.subMap(de, false, ate, false);
+    }
+
+    @Override
+    public void close() {
+        if (!fechada) {
+            fechada = true;
+            versoes.soltar();
+        }
+    }
+}
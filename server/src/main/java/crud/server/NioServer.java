@@ -0,0 +1,450 @@
+package crud.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import crud.repository.RepositoryManager;
+import crud.service.MessageProcessor;
+import crud.service.ResponseSink;
+
+/**
+ * Motor alternativo ao {@link Server}: um conjunto fixo de event loops, cada um com
+ * seu próprio {@link Selector}, atende todas as conexões sem bloquear threads.
+ * Fala o mesmo protocolo texto (linha de comando, resposta terminada em {@code <END>}).
+ * Conexões ociosas custam apenas o estado em {@link Conexao}, não uma thread.
+ *
+ * <p>Escritas que esperam o fsync do journal ({@link MessageProcessor#aguardaDisco})
+ * não executam no loop: vão para uma virtual thread, e a conexão fica sem ler até a
+ * resposta voltar ao loop, para que as respostas sigam a ordem dos comandos.
+ */
+public class NioServer {
+    public static final int LOOPS_PADRAO = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    // Tamanho máximo de uma linha de comando; acima disso a conexão é encerrada
+    private static final int MAX_LINHA = 1 << 20;
+    // Tamanho máximo de um BATCH (cabeçalho + sub-comandos)
+    private static final int MAX_LOTE = 16 << 20;
+    // Acima desse volume pendente de saída a conexão para de ler (contrapressão)
+    private static final int MAX_SAIDA_PENDENTE = 1 << 20;
+
+    private final int port;
+    private final int numLoops;
+    private final MessageProcessor messageProcessor;
+    private final ProtocoloTexto protocolo;
+
+    public NioServer(int port, int numLoops) {
+        this(port, numLoops, new MessageProcessor(new RepositoryManager()));
+    }
+
+    public NioServer(int port, int numLoops, MessageProcessor messageProcessor) {
+        this.port = port;
+        this.numLoops = numLoops;
+        this.messageProcessor = messageProcessor;
+        this.protocolo = new ProtocoloTexto(messageProcessor, false);
+    }
+
+    /**
+     * Aceita conexões na thread atual e as distribui em round-robin entre os event loops.
+     */
+    public void iniciar() {
+        EventLoop[] loops = new EventLoop[numLoops];
+
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.socket().setReuseAddress(true);
+            server.bind(new InetSocketAddress(port));
+
+            for (int i = 0; i < numLoops; i++) {
+                loops[i] = new EventLoop(Selector.open());
+                Thread thread = new Thread(loops[i], "nio-loop-" + i);
+                thread.setDaemon(true);
+                thread.start();
+            }
+            System.out.println("Servidor NIO iniciado na porta " + port + " (" + numLoops + " event loops)");
+
+            int proximo = 0;
+            while (true) {
+                SocketChannel conn = server.accept();
+                conn.configureBlocking(false);
+                System.out.println("Conectado com " + conn.socket().getInetAddress().getHostAddress());
+                loops[proximo].registrar(conn);
+                proximo = (proximo + 1) % numLoops;
+            }
+        } catch (IOException e) {
+            System.err.println("Erro no servidor: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Estado de uma conexão: a linha parcialmente recebida e as respostas ainda não enviadas.
+     */
+    private static final class Conexao {
+        private byte[] linha = new byte[256];
+        private int tamanhoLinha;
+        private final Queue<ByteBuffer> saida = new ArrayDeque<>();
+        private int saidaPendente;
+        private boolean encerrar;
+        private boolean pipeline;
+        // BATCH em montagem: cabeçalho e sub-comandos recebidos até agora (só o
+        // cabeçalho se o BATCH passa do limite e os sub-comandos são descartados)
+        private String loteCabecalho;
+        private StringBuilder lote;
+        private int loteRestante;
+        private String loteId;
+        // Escrita executando fora do loop e bytes já recebidos depois dela
+        private boolean ocupada;
+        private ByteBuffer restante;
+
+        void acumular(byte b) throws IOException {
+            if (tamanhoLinha == linha.length) {
+                if (linha.length >= MAX_LINHA) {
+                    throw new IOException("Linha excede " + MAX_LINHA + " bytes");
+                }
+                linha = Arrays.copyOf(linha, linha.length * 2);
+            }
+            linha[tamanhoLinha++] = b;
+        }
+
+        String extrairLinha() {
+            int fim = tamanhoLinha;
+            if (fim > 0 && linha[fim - 1] == '\r') {
+                fim--;
+            }
+            String texto = new String(linha, 0, fim, StandardCharsets.UTF_8);
+            tamanhoLinha = 0;
+            return texto;
+        }
+
+        /**
+         * Acumula as linhas de um BATCH; retorna o comando completo ou null
+         * enquanto ainda faltam sub-comandos. As de um BATCH acima do limite são
+         * descartadas.
+         */
+        String montarComando(String linha) throws IOException {
+            if (loteRestante > 0) {
+                if (lote != null) {
+                    lote.append('\n').append(loteId == null ? linha : ProtocoloTexto.semPrefixo(loteId, linha));
+                    if (lote.length() > MAX_LOTE) {
+                        throw new IOException("BATCH excede " + MAX_LOTE + " bytes");
+                    }
+                }
+                if (--loteRestante > 0) {
+                    return null;
+                }
+                String comando = lote == null ? loteCabecalho : lote.toString();
+                lote = null;
+                loteCabecalho = null;
+                return comando;
+            }
+
+            String cabecalho = linha;
+            String id = null;
+            if (pipeline) {
+                ProtocoloTexto.ComandoMarcado marcado = ProtocoloTexto.ComandoMarcado.ler(linha);
+                if (marcado == null) {
+                    return linha;
+                }
+                cabecalho = marcado.comando();
+                id = marcado.id();
+            }
+            int seguintes = ProtocoloTexto.linhasSeguintes(cabecalho);
+            if (seguintes == 0) {
+                return linha;
+            }
+            if (ProtocoloTexto.descartarLote(seguintes)) {
+                loteCabecalho = linha;
+            } else {
+                lote = new StringBuilder(linha);
+            }
+            loteRestante = seguintes;
+            loteId = id;
+            return null;
+        }
+
+        /**
+         * Guarda o que sobrou de dados para quando a escrita em andamento terminar
+         */
+        void guardar(ByteBuffer dados) {
+            restante = dados.hasRemaining() ? ByteBuffer.allocate(dados.remaining()).put(dados).flip() : null;
+        }
+
+        void enfileirar(CharSequence resposta) {
+            ByteBuffer buffer = StandardCharsets.UTF_8.encode(resposta.toString());
+            saidaPendente += buffer.remaining();
+            saida.add(buffer);
+        }
+    }
+
+    private final class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<SocketChannel> pendentes = new ConcurrentLinkedQueue<>();
+        // Escritas que terminaram fora do loop: entregam a resposta na thread do loop
+        private final Queue<Runnable> concluidas = new ConcurrentLinkedQueue<>();
+        // Buffer de leitura compartilhado pelas conexões do loop
+        private final ByteBuffer leitura = ByteBuffer.allocateDirect(64 * 1024);
+        private final StringBuilder resposta = new StringBuilder();
+
+        EventLoop(Selector selector) {
+            this.selector = selector;
+        }
+
+        void registrar(SocketChannel conn) {
+            pendentes.add(conn);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    selector.select();
+                    SocketChannel novo;
+                    while ((novo = pendentes.poll()) != null) {
+                        novo.register(selector, SelectionKey.OP_READ, new Conexao());
+                    }
+                    Runnable concluida;
+                    while ((concluida = concluidas.poll()) != null) {
+                        concluida.run();
+                    }
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        try {
+                            if (key.isValid() && key.isReadable()) {
+                                ler(key);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                escrever(key);
+                            }
+                        } catch (IOException e) {
+                            System.err.println("Erro ao processar conexão: " + e.getMessage());
+                            fechar(key);
+                        }
+                    }
+                } catch (IOException e) {
+                    System.err.println("Erro no event loop: " + e.getMessage());
+                }
+            }
+        }
+
+        private void ler(SelectionKey key) throws IOException {
+            SocketChannel canal = (SocketChannel) key.channel();
+            Conexao conexao = (Conexao) key.attachment();
+            if (conexao.ocupada) {
+                return; // pronta para leitura antes de a escrita ir para fora do loop
+            }
+
+            leitura.clear();
+            int lidos = canal.read(leitura);
+            if (lidos < 0) {
+                fechar(key);
+                return;
+            }
+            leitura.flip();
+            consumir(key, conexao, leitura);
+            escrever(key);
+        }
+
+        /**
+         * Executa os comandos completos em dados. Ao encontrar uma escrita que espera
+         * o disco, passa-a para uma virtual thread e guarda o resto de dados na conexão.
+         */
+        private void consumir(SelectionKey key, Conexao conexao, ByteBuffer dados) throws IOException {
+            ResponseSink saida = saida(conexao);
+            while (dados.hasRemaining() && !conexao.encerrar) {
+                byte b = dados.get();
+                if (b != '\n') {
+                    conexao.acumular(b);
+                    continue;
+                }
+                String comando = conexao.montarComando(conexao.extrairLinha());
+                if (comando == null) {
+                    continue; // aguardando o restante do BATCH
+                }
+                if (aguardaDisco(conexao, comando)) {
+                    conexao.guardar(dados);
+                    delegar(key, conexao, comando);
+                    return;
+                }
+                resposta.setLength(0);
+                if (tratarLinha(conexao, comando, saida) == ProtocoloTexto.Acao.ENCERRAR) {
+                    conexao.encerrar = true; // QUIT: descarta o restante e fecha após enviar BYE
+                }
+                if (resposta.length() > 0) {
+                    conexao.enfileirar(resposta);
+                }
+            }
+        }
+
+        private boolean aguardaDisco(Conexao conexao, String comando) {
+            if (!conexao.pipeline) {
+                return messageProcessor.aguardaDisco(comando);
+            }
+            ProtocoloTexto.ComandoMarcado marcado = ProtocoloTexto.ComandoMarcado.ler(comando);
+            return marcado != null && messageProcessor.aguardaDisco(marcado.comando());
+        }
+
+        /**
+         * Executa o comando em uma virtual thread; a resposta volta para o loop por
+         * 'concluidas'. Até lá a conexão não lê nem executa outros comandos.
+         */
+        private void delegar(SelectionKey key, Conexao conexao, String comando) {
+            conexao.ocupada = true;
+            Thread.ofVirtual().name("nio-escrita").start(() -> {
+                StringBuilder texto = new StringBuilder();
+                ProtocoloTexto.Acao acao;
+                try {
+                    acao = tratarLinha(conexao, comando, linha -> texto.append(linha).append(ProtocoloTexto.NOVA_LINHA));
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Erro ao processar conexão: " + e.getMessage());
+                    acao = null;
+                }
+                ProtocoloTexto.Acao resultado = acao;
+                concluidas.add(() -> concluir(key, conexao, texto, resultado));
+                selector.wakeup();
+            });
+        }
+
+        /**
+         * Na thread do loop: enfileira a resposta da escrita e retoma a conexão
+         *
+         * @param acao null se a escrita falhou; a conexão é fechada
+         */
+        private void concluir(SelectionKey key, Conexao conexao, CharSequence texto, ProtocoloTexto.Acao acao) {
+            if (!key.isValid()) {
+                return; // a conexão foi fechada enquanto a escrita executava
+            }
+            try {
+                if (acao == null) {
+                    fechar(key);
+                    return;
+                }
+                conexao.ocupada = false;
+                if (texto.length() > 0) {
+                    conexao.enfileirar(texto);
+                }
+                if (acao == ProtocoloTexto.Acao.ENCERRAR) {
+                    conexao.encerrar = true;
+                }
+                ByteBuffer restante = conexao.restante;
+                conexao.restante = null;
+                if (restante != null) {
+                    consumir(key, conexao, restante);
+                }
+                escrever(key);
+            } catch (IOException e) {
+                System.err.println("Erro ao processar conexão: " + e.getMessage());
+                fechar(key);
+            }
+        }
+
+        /**
+         * Linhas da resposta vão para o buffer do loop, que é codificado e enfileirado
+         * a cada bloco; assim uma listagem longa não fica inteira em um único texto.
+         */
+        private ResponseSink saida(Conexao conexao) {
+            return new ResponseSink() {
+                @Override
+                public void linha(CharSequence linha) {
+                    resposta.append(linha).append(ProtocoloTexto.NOVA_LINHA);
+                    descarregarSeCheio();
+                }
+
+                @Override
+                public void linhas(CharSequence bloco) throws IOException {
+                    if (!ProtocoloTexto.NOVA_LINHA.equals("\n")) {
+                        ResponseSink.super.linhas(bloco);
+                        return;
+                    }
+                    if (bloco.length() < ProtocoloTexto.TAMANHO_BLOCO) {
+                        resposta.append(bloco);
+                        descarregarSeCheio();
+                        return;
+                    }
+                    // bloco grande vai direto para a fila, sem passar pelo buffer do loop
+                    if (resposta.length() > 0) {
+                        conexao.enfileirar(resposta);
+                        resposta.setLength(0);
+                    }
+                    conexao.enfileirar(bloco);
+                }
+
+                private void descarregarSeCheio() {
+                    if (resposta.length() >= ProtocoloTexto.TAMANHO_BLOCO) {
+                        conexao.enfileirar(resposta);
+                        resposta.setLength(0);
+                    }
+                }
+            };
+        }
+
+        /**
+         * No modo pipeline os comandos continuam executando um de cada vez, na ordem
+         * em que chegaram; as respostas são marcadas com o id de cada comando.
+         */
+        private ProtocoloTexto.Acao tratarLinha(Conexao conexao, String linha, ResponseSink saida) throws IOException {
+            if (!conexao.pipeline) {
+                ProtocoloTexto.Acao acao = protocolo.tratarLinha(linha, saida);
+                conexao.pipeline = acao == ProtocoloTexto.Acao.ATIVAR_PIPELINE;
+                return acao;
+            }
+            ProtocoloTexto.ComandoMarcado marcado = ProtocoloTexto.ComandoMarcado.ler(linha);
+            if (marcado == null) {
+                protocolo.tratarSemId(saida);
+                return ProtocoloTexto.Acao.CONTINUAR;
+            }
+            return protocolo.tratarMarcado(marcado, saida);
+        }
+
+        private void escrever(SelectionKey key) throws IOException {
+            SocketChannel canal = (SocketChannel) key.channel();
+            Conexao conexao = (Conexao) key.attachment();
+
+            ByteBuffer buffer;
+            while ((buffer = conexao.saida.peek()) != null) {
+                int escritos = canal.write(buffer);
+                conexao.saidaPendente -= escritos;
+                if (buffer.hasRemaining()) {
+                    break; // buffer do socket cheio, aguarda OP_WRITE
+                }
+                conexao.saida.poll();
+            }
+
+            if (conexao.saida.isEmpty() && conexao.encerrar) {
+                fechar(key);
+                return;
+            }
+
+            int interesse = 0;
+            if (!conexao.encerrar && !conexao.ocupada && conexao.saidaPendente < MAX_SAIDA_PENDENTE) {
+                interesse |= SelectionKey.OP_READ;
+            }
+            if (!conexao.saida.isEmpty()) {
+                interesse |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(interesse);
+        }
+
+        private void fechar(SelectionKey key) {
+            key.cancel();
+            try {
+                key.channel().close();
+            } catch (IOException e) {
+                System.err.println("Erro ao fechar conexão: " + e.getMessage());
+            }
+            System.out.println("Desconectado");
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package crud.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import crud.service.MessageProcessor;
+import crud.service.ResponseSink;
+
+/**
+ * Protocolo binário opcional, negociado com a linha {@code BINARIO} no protocolo texto.
+ * Depois da confirmação ({@code BINARIO;OK} / {@code <END>}) toda a comunicação é em frames:
+ *
+ * <pre>
+ * frame     = varint(tamanho) corpo
+ * pedido    = opcode(1) tipo(1) varint(nCampos) campo*
+ * campo     = 0x00 varint(n) bytesUtf8   (texto)
+ *           | 0x01 zigzag-varint         (inteiro, ex.: anoFabricacao)
+ * resposta  = flag(1) varint(nLinhas) (varint(n) bytesUtf8)*
+ * </pre>
+ *
+ * Respostas longas são divididas em vários frames: os parciais têm flag 1 e o
+ * último tem flag 0.
+ *
+ * O cliente só deve enviar frames depois de ler a confirmação. Os códigos abaixo
+ * precisam ficar em sincronia com {@code crud.client.ProtocoloBinario}.
+ */
+final class ProtocoloBinario {
+    static final String HANDSHAKE = "BINARIO";
+
+    static final int OP_TEXTO = 0;   // campo único com a mensagem texto completa
+    static final int OP_BATCH = 9;   // campos: modo, sub-comandos como texto
+    static final int OP_QUIT = 0x7F;
+
+    // Índice = opcode; os nomes são as mesmas constantes usadas no protocolo texto
+    private static final String[] OPERACOES = {
+            null, "INSERT", "UPDATE", "GET", "DELETE", "LIST",
+            "ADD_TRIPULANTE", "REMOVE_TRIPULANTE", "LIST_TRIPULANTES", "BATCH", "FIND_AVIOES"
+    };
+    // Índice = tipo; 0 indica operação sem tipo (campos começam logo após a operação)
+    private static final String[] TIPOS = {null, "TRIPULANTE", "PASSAGEIRO", "AVIAO", "ALL"};
+
+    static final int CAMPO_TEXTO = 0;
+    static final int CAMPO_INTEIRO = 1;
+
+    static final int FLAG_FINAL = 0;
+    static final int FLAG_PARCIAL = 1;
+
+    private static final int MAX_FRAME = 16 << 20;
+
+    // Os campos são remontados como texto (é assim que o journal os grava), então um
+    // separador dentro de um campo viraria outro comando na reexecução
+    private static final String PROIBIDOS_CAMPO = ";\r\n";
+    private static final String PROIBIDOS_LINHA = "\r\n";
+    private static final String CAMPO_INVALIDO = "Campo com caractere não permitido (';' ou quebra de linha)";
+
+    private final MessageProcessor messageProcessor;
+
+    ProtocoloBinario(MessageProcessor messageProcessor) {
+        this.messageProcessor = messageProcessor;
+    }
+
+    /**
+     * Atende frames até o cliente enviar QUIT ou fechar a conexão
+     */
+    void atender(InputStream entrada, OutputStream saida) throws IOException {
+        Leitor leitor = new Leitor(entrada);
+        Resposta resposta = new Resposta(saida);
+
+        while (leitor.proximoFrame()) {
+            int opcode = leitor.lerByte();
+            int tipo = leitor.lerByte();
+
+            if (opcode == OP_QUIT) {
+                resposta.linha("BYE");
+                resposta.concluir();
+                return;
+            }
+            processar(opcode, tipo, leitor, resposta);
+            resposta.concluir();
+        }
+    }
+
+    private void processar(int opcode, int tipo, Leitor leitor, ResponseSink resposta) throws IOException {
+        int nCampos = leitor.lerVarint();
+        if (opcode == OP_TEXTO) {
+            if (nCampos != 1) {
+                resposta.linha("Frame de texto inválido");
+                return;
+            }
+            String mensagem = leitor.lerCampo();
+            // só o BATCH tem várias linhas, como no protocolo texto
+            boolean lote = mensagem.regionMatches(true, 0, "BATCH;", 0, 6);
+            if (!permitido(mensagem, lote ? "\r" : PROIBIDOS_LINHA)) {
+                resposta.linha(CAMPO_INVALIDO);
+                return;
+            }
+            messageProcessor.processMessage(mensagem, resposta);
+            return;
+        }
+        if (opcode >= OPERACOES.length || tipo >= TIPOS.length || nCampos < 0) {
+            resposta.linha("Operação não reconhecida: " + opcode);
+            return;
+        }
+
+        if (opcode == OP_BATCH) {
+            // BATCH;modo;N seguido das linhas dos sub-comandos, como no protocolo texto
+            String modo = nCampos > 0 ? leitor.lerCampo() : "";
+            boolean valido = permitido(modo, PROIBIDOS_CAMPO);
+            StringBuilder lote = new StringBuilder("BATCH;").append(modo).append(';').append(nCampos - 1);
+            for (int i = 1; i < nCampos; i++) {
+                String linha = leitor.lerCampo();
+                valido &= permitido(linha, PROIBIDOS_LINHA);
+                lote.append('\n').append(linha);
+            }
+            if (!valido) {
+                resposta.linha(CAMPO_INVALIDO);
+                return;
+            }
+            messageProcessor.processMessage(lote.toString(), resposta);
+            return;
+        }
+
+        int inicio = tipo == 0 ? 1 : 2;
+        String[] fields = new String[inicio + nCampos];
+        fields[0] = OPERACOES[opcode];
+        if (tipo != 0) {
+            fields[1] = TIPOS[tipo];
+        }
+        for (int i = 0; i < nCampos; i++) {
+            fields[inicio + i] = leitor.lerCampo();
+            if (!permitido(fields[inicio + i], PROIBIDOS_CAMPO)) {
+                resposta.linha(CAMPO_INVALIDO);
+                return;
+            }
+        }
+        messageProcessor.processFields(fields, resposta);
+    }
+
+    private static boolean permitido(String campo, String proibidos) {
+        for (int i = 0; i < campo.length(); i++) {
+            if (proibidos.indexOf(campo.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Monta os frames de resposta: cada linha vira um campo de texto e, quando as
+     * linhas acumuladas passam de um bloco, elas seguem em um frame parcial.
+     */
+    private static final class Resposta implements ResponseSink {
+        private final OutputStream saida;
+        private final ByteArrayOutputStream linhas = new ByteArrayOutputStream(256);
+        private final ByteArrayOutputStream corpo = new ByteArrayOutputStream(256);
+        private int quantidade;
+
+        Resposta(OutputStream saida) {
+            this.saida = saida;
+        }
+
+        @Override
+        public void linha(CharSequence linha) throws IOException {
+            byte[] bytes = linha.toString().getBytes(StandardCharsets.UTF_8);
+            escreverVarint(linhas, bytes.length);
+            linhas.write(bytes);
+            quantidade++;
+            if (linhas.size() >= ProtocoloTexto.TAMANHO_BLOCO) {
+                enviar(FLAG_PARCIAL);
+            }
+        }
+
+        /**
+         * Envia o frame final da resposta atual
+         */
+        void concluir() throws IOException {
+            enviar(FLAG_FINAL);
+            saida.flush();
+        }
+
+        private void enviar(int flag) throws IOException {
+            corpo.reset();
+            corpo.write(flag);
+            escreverVarint(corpo, quantidade);
+            linhas.writeTo(corpo);
+            escreverVarint(saida, corpo.size());
+            corpo.writeTo(saida);
+            linhas.reset();
+            quantidade = 0;
+        }
+    }
+
+    static void escreverVarint(OutputStream out, int valor) throws IOException {
+        while ((valor & ~0x7F) != 0) {
+            out.write((valor & 0x7F) | 0x80);
+            valor >>>= 7;
+        }
+        out.write(valor);
+    }
+
+    /**
+     * Lê um frame inteiro para um buffer reaproveitado e decodifica os campos a partir dele
+     */
+    private static final class Leitor {
+        private final InputStream entrada;
+        private byte[] buffer = new byte[256];
+        private int posicao;
+        private int limite;
+
+        Leitor(InputStream entrada) {
+            this.entrada = entrada;
+        }
+
+        /**
+         * @return false se a conexão foi encerrada entre frames
+         */
+        boolean proximoFrame() throws IOException {
+            int primeiro = entrada.read();
+            if (primeiro < 0) {
+                return false;
+            }
+            int tamanho = primeiro & 0x7F;
+            int deslocamento = 7;
+            int b = primeiro;
+            while ((b & 0x80) != 0) {
+                b = entrada.read();
+                if (b < 0 || deslocamento > 28) {
+                    throw new EOFException("Tamanho de frame inválido");
+                }
+                tamanho |= (b & 0x7F) << deslocamento;
+                deslocamento += 7;
+            }
+            if (tamanho < 2 || tamanho > MAX_FRAME) {
+                throw new IOException("Tamanho de frame inválido: " + tamanho);
+            }
+
+            if (buffer.length < tamanho) {
+                buffer = Arrays.copyOf(buffer, Math.max(tamanho, buffer.length * 2));
+            }
+            int lidos = entrada.readNBytes(buffer, 0, tamanho);
+            if (lidos < tamanho) {
+                throw new EOFException("Frame incompleto");
+            }
+            posicao = 0;
+            limite = tamanho;
+            return true;
+        }
+
+        int lerByte() throws IOException {
+            if (posicao >= limite) {
+                throw new EOFException("Frame truncado");
+            }
+            return buffer[posicao++] & 0xFF;
+        }
+
+        int lerVarint() throws IOException {
+            int valor = 0;
+            for (int deslocamento = 0; deslocamento < 35; deslocamento += 7) {
+                int b = lerByte();
+                valor |= (b & 0x7F) << deslocamento;
+                if ((b & 0x80) == 0) {
+                    return valor;
+                }
+            }
+            throw new IOException("Varint inválido");
+        }
+
+        String lerCampo() throws IOException {
+            int tipo = lerByte();
+            if (tipo == CAMPO_INTEIRO) {
+                int zigzag = lerVarint();
+                return Integer.toString((zigzag >>> 1) ^ -(zigzag & 1));
+            }
+            if (tipo != CAMPO_TEXTO) {
+                throw new IOException("Tipo de campo inválido: " + tipo);
+            }
+            int tamanho = lerVarint();
+            if (tamanho < 0 || tamanho > limite - posicao) {
+                throw new EOFException("Campo truncado");
+            }
+            String texto = new String(buffer, posicao, tamanho, StandardCharsets.UTF_8);
+            posicao += tamanho;
+            return texto;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package crud.server;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import crud.service.MessageProcessor;
+import crud.service.ResponseSink;
+
+/**
+ * Regras do protocolo texto, compartilhadas pelos motores bloqueante e NIO:
+ * cada linha recebida é um comando e a resposta termina com a linha {@code <END>}.
+ *
+ * <p>Modo pipeline (opcional): depois que o cliente envia a linha {@code PIPELINE},
+ * cada comando vem no formato {@code id:comando} e cada linha de resposta volta
+ * prefixada com {@code id:}, terminando em {@code id:<END>}. O cliente pode manter
+ * vários comandos em voo e as respostas podem chegar fora de ordem.
+ *
+ * <p>A linha {@code BINARIO} troca a sessão para o {@link ProtocoloBinario}, quando o
+ * motor oferece esse protocolo.
+ */
+final class ProtocoloTexto {
+    static final String FIM = "<END>";
+    static final String PIPELINE = "PIPELINE";
+    // Identificador usado para responder linhas que chegaram sem id no modo pipeline
+    static final String SEM_ID = "*";
+    static final String NOVA_LINHA = System.lineSeparator();
+    // Respostas longas (listagens) são enviadas em blocos de até esse tamanho
+    static final int TAMANHO_BLOCO = 8 * 1024;
+    // Linhas de BATCH acima do limite que ainda são lidas e descartadas; além disso a conexão é encerrada
+    static final int MAX_LINHAS_LOTE = 10 * MessageProcessor.MAX_BATCH;
+
+    /**
+     * O que a sessão deve fazer depois de tratar uma linha
+     */
+    enum Acao {
+        CONTINUAR,
+        ENCERRAR,
+        ATIVAR_PIPELINE,
+        ATIVAR_BINARIO
+    }
+
+    /**
+     * Comando do modo pipeline já separado do seu identificador
+     */
+    record ComandoMarcado(String id, String comando) {
+        /**
+         * Separa "id:comando"; retorna null se a linha não tiver identificador
+         */
+        static ComandoMarcado ler(String linha) {
+            int separador = linha.indexOf(':');
+            if (separador <= 0) {
+                return null;
+            }
+            return new ComandoMarcado(linha.substring(0, separador).trim(), linha.substring(separador + 1));
+        }
+
+        boolean isQuit() {
+            return "QUIT".equalsIgnoreCase(comando.trim());
+        }
+    }
+
+    private final MessageProcessor messageProcessor;
+    private final boolean binarioDisponivel;
+
+    /**
+     * Quantas linhas seguintes pertencem ao comando: um BATCH;MODO;N é seguido
+     * de N linhas de sub-comandos. Demais comandos ocupam uma linha só.
+     *
+     * @throws IOException se N passar de {@link #MAX_LINHAS_LOTE}; a conexão é encerrada
+     */
+    static int linhasSeguintes(String comando) throws IOException {
+        String cmd = comando.trim();
+        if (!cmd.regionMatches(true, 0, "BATCH;", 0, 6)) {
+            return 0;
+        }
+        String[] header = cmd.split(";");
+        if (header.length < 3) {
+            return 0;
+        }
+        int n;
+        try {
+            n = Integer.parseInt(header[2].trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+        if (n > MAX_LINHAS_LOTE) {
+            throw new IOException("BATCH anuncia " + n + " sub-comandos (máx. " + MAX_LINHAS_LOTE + ")");
+        }
+        return Math.max(n, 0);
+    }
+
+    /**
+     * Se as linhas de um BATCH acima de {@link MessageProcessor#MAX_BATCH} devem ser
+     * lidas e descartadas: o comando segue só com o cabeçalho, que o MessageProcessor
+     * recusa, e nenhuma delas é executada como comando avulso
+     */
+    static boolean descartarLote(int linhas) {
+        return linhas > MessageProcessor.MAX_BATCH;
+    }
+
+    /**
+     * No modo pipeline as linhas de sub-comando repetem o id do comando; remove esse prefixo
+     */
+    static String semPrefixo(String id, String linha) {
+        if (linha.startsWith(id) && linha.length() > id.length() && linha.charAt(id.length()) == ':') {
+            return linha.substring(id.length() + 1);
+        }
+        return linha;
+    }
+
+    ProtocoloTexto(MessageProcessor messageProcessor, boolean binarioDisponivel) {
+        this.messageProcessor = messageProcessor;
+        this.binarioDisponivel = binarioDisponivel;
+    }
+
+    /**
+     * Trata uma linha recebida no modo simples e entrega a resposta completa
+     * (incluindo {@code <END>}) em out, uma linha por vez.
+     */
+    Acao tratarLinha(String mensagem, ResponseSink out) throws IOException {
+        String cmd = mensagem.trim();
+        if (cmd.isEmpty()) {
+            // resposta vazia, mas sinaliza término
+            out.linha(FIM);
+            return Acao.CONTINUAR;
+        }
+
+        // comando para encerrar a sessão
+        if ("QUIT".equalsIgnoreCase(cmd)) {
+            out.linha("BYE");
+            out.linha(FIM);
+            return Acao.ENCERRAR;
+        }
+
+        // troca para o modo pipeline
+        if (PIPELINE.equalsIgnoreCase(cmd)) {
+            out.linha(PIPELINE + ";OK");
+            out.linha(FIM);
+            return Acao.ATIVAR_PIPELINE;
+        }
+
+        // troca para o protocolo binário
+        if (ProtocoloBinario.HANDSHAKE.equalsIgnoreCase(cmd)) {
+            if (!binarioDisponivel) {
+                out.linha("Protocolo binário não disponível neste servidor");
+                out.linha(FIM);
+                return Acao.CONTINUAR;
+            }
+            out.linha(ProtocoloBinario.HANDSHAKE + ";OK");
+            out.linha(FIM);
+            return Acao.ATIVAR_BINARIO;
+        }
+
+        // processamento normal
+        messageProcessor.processMessage(cmd, out);
+        // marca fim da resposta
+        out.linha(FIM);
+        return Acao.CONTINUAR;
+    }
+
+    /**
+     * Executa um comando do modo pipeline e entrega a resposta com todas as linhas
+     * prefixadas pelo seu identificador.
+     */
+    Acao tratarMarcado(ComandoMarcado marcado, ResponseSink out) throws IOException {
+        String cmd = marcado.comando().trim();
+        ResponseSink marcada = linha -> out.linha(marcado.id() + ":" + linha);
+        if (marcado.isQuit()) {
+            marcada.linha("BYE");
+            marcada.linha(FIM);
+            return Acao.ENCERRAR;
+        }
+        if (!cmd.isEmpty()) {
+            messageProcessor.processMessage(cmd, marcada);
+        }
+        marcada.linha(FIM);
+        return Acao.CONTINUAR;
+    }
+
+    /**
+     * Resposta para uma linha sem identificador no modo pipeline
+     */
+    void tratarSemId(ResponseSink out) throws IOException {
+        out.linha(SEM_ID + ":Formato inválido no modo pipeline. Use: id:OPERACAO;TIPO;dados...");
+        out.linha(SEM_ID + ":" + FIM);
+    }
+
+    /**
+     * Sink que escreve cada linha seguida do separador. O Writer deve ser
+     * bufferizado: ele descarrega sozinho quando enche, então respostas longas
+     * saem em blocos à medida que são geradas.
+     */
+    static ResponseSink linhasEm(Writer out) {
+        return new ResponseSink() {
+            @Override
+            public void linha(CharSequence linha) throws IOException {
+                out.append(linha).append(NOVA_LINHA);
+            }
+
+            @Override
+            public void linhas(CharSequence bloco) throws IOException {
+                if (NOVA_LINHA.equals("\n")) {
+                    out.append(bloco);
+                } else {
+                    ResponseSink.super.linhas(bloco);
+                }
+            }
+        };
+    }
+}
@@ -1,5 +1,7 @@
 package crud.server;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
@@ -8,40 +10,91 @@ import java.io.OutputStreamWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
+import crud.persistence.Armazenamento;
+import crud.persistence.Journal;
 import crud.repository.RepositoryManager;
+import crud.service.CacheListagens;
 import crud.service.MessageProcessor;
+import crud.service.ResponseSink;
 
 public class Server {
+    public static final int MAX_SESSOES_PADRAO = 256;
+    // Comandos simultâneos de uma mesma conexão no modo pipeline
+    private static final int MAX_EM_VOO_PIPELINE = 64;
+
     private final int port;
-    private final RepositoryManager repositoryManager;
+    private final int maxSessoes;
     private final MessageProcessor messageProcessor;
+    private final ProtocoloTexto protocolo;
+    private final ProtocoloBinario protocoloBinario;
 
     public Server(int port) {
+        this(port, MAX_SESSOES_PADRAO);
+    }
+
+    /**
+     * @param maxSessoes limite de sessões atendidas ao mesmo tempo; com 1 o servidor
+     *                   volta ao comportamento sequencial (uma sessão por vez)
+     */
+    public Server(int port, int maxSessoes) {
+        this(port, maxSessoes, new MessageProcessor(new RepositoryManager()));
+    }
+
+    public Server(int port, int maxSessoes, MessageProcessor messageProcessor) {
         this.port = port;
-        this.repositoryManager = new RepositoryManager();
-        this.messageProcessor = new MessageProcessor(repositoryManager);
+        this.maxSessoes = maxSessoes;
+        this.messageProcessor = messageProcessor;
+        this.protocolo = new ProtocoloTexto(messageProcessor, true);
+        this.protocoloBinario = new ProtocoloBinario(messageProcessor);
     }
 
 
+    /**
+     * Aceita conexões e atende cada uma em sua própria virtual thread.
+     * Quando o limite de sessões é atingido, novas conexões ficam no backlog
+     * do socket até que alguma sessão seja encerrada.
+     */
     public void iniciar() {
-        try (ServerSocket server = new ServerSocket(port)) {
+        Semaphore sessoes = new Semaphore(maxSessoes);
+
+        try (ServerSocket server = new ServerSocket(port);
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
             server.setReuseAddress(true);
-            System.out.println("Servidor iniciado na porta " + port);
+            System.out.println("Servidor iniciado na porta " + port + " (máx. " + maxSessoes + " sessões)");
 
             while (true) {
-                System.out.println("Aguardando conexão");
-                try (Socket conn = server.accept()) {
-                    String clientAddress = conn.getInetAddress().getHostAddress();
-                    System.out.println("Conectado com " + clientAddress);
-                    processarConexao(conn);        // mantém a sessão até cliente fechar/QUIT
+                sessoes.acquireUninterruptibly();
+                Socket conn;
+                try {
+                    conn = server.accept();
+                } catch (IOException e) {
+                    sessoes.release();
+                    throw e;
                 }
-                System.out.println("Desconectado");
+                executor.submit(() -> atenderConexao(conn, sessoes));
             }
         } catch (IOException e) {
             System.err.println("Erro no servidor: " + e.getMessage());
         }
     }
+
+    private void atenderConexao(Socket conn, Semaphore sessoes) {
+        String clientAddress = conn.getInetAddress().getHostAddress();
+        try (conn) {
+            System.out.println("Conectado com " + clientAddress);
+            processarConexao(conn);        // mantém a sessão até cliente fechar/QUIT
+        } catch (IOException e) {
+            System.err.println("Erro ao fechar conexão: " + e.getMessage());
+        } finally {
+            sessoes.release();
+            System.out.println("Desconectado de " + clientAddress);
+        }
+    }
     
     private void processarConexao(Socket conn) {
         try (
@@ -50,65 +103,286 @@ public class Server {
             BufferedWriter writerOutput = new BufferedWriter(
                 new OutputStreamWriter(conn.getOutputStream(), StandardCharsets.UTF_8))
         ) {
+            ResponseSink saida = ProtocoloTexto.linhasEm(writerOutput);
             String mensagem;
             while ((mensagem = readerInput.readLine()) != null) {
-                String cmd = mensagem.trim();
-                if (cmd.isEmpty()) {
-                    // resposta vazia, mas sinaliza término
-                    writerOutput.write("<END>");
-                    writerOutput.newLine();
-                    writerOutput.flush();
-                    continue;
+                mensagem = completarLote(readerInput, mensagem, null);
+                ProtocoloTexto.Acao acao = protocolo.tratarLinha(mensagem, saida);
+                writerOutput.flush();
+                if (acao == ProtocoloTexto.Acao.ENCERRAR) {
+                    break; // QUIT => fecha socket (try-with-resources)
+                }
+                if (acao == ProtocoloTexto.Acao.ATIVAR_PIPELINE) {
+                    processarPipeline(readerInput, writerOutput);
+                    break;
+                }
+                if (acao == ProtocoloTexto.Acao.ATIVAR_BINARIO) {
+                    // o cliente só envia frames depois de ler a confirmação, então
+                    // o BufferedReader não ficou com bytes do protocolo binário
+                    protocoloBinario.atender(new BufferedInputStream(conn.getInputStream()),
+                            new BufferedOutputStream(conn.getOutputStream()));
+                    break;
                 }
+            }
+        } catch (IOException e) {
+            System.err.println("Erro ao processar conexão: " + e.getMessage());
+        }
+    }
 
-                // comando para encerrar a sessão
-                if ("QUIT".equalsIgnoreCase(cmd)) {
-                    writerOutput.write("BYE");
-                    writerOutput.newLine();
-                    writerOutput.write("<END>");
-                    writerOutput.newLine();
-                    writerOutput.flush();
-                    break; // sai do loop => fecha socket (try-with-resources)
+    /**
+     * Modo pipeline: cada comando roda em sua própria virtual thread e a resposta
+     * é escrita sob o lock do writer, em blocos, à medida que fica pronta.
+     */
+    private void processarPipeline(BufferedReader readerInput, BufferedWriter writerOutput) throws IOException {
+        Semaphore emVoo = new Semaphore(MAX_EM_VOO_PIPELINE);
+        ResponseSink saida = ProtocoloTexto.linhasEm(writerOutput);
+        try {
+            String mensagem;
+            while ((mensagem = readerInput.readLine()) != null) {
+                ProtocoloTexto.ComandoMarcado marcado = ProtocoloTexto.ComandoMarcado.ler(mensagem);
+                if (marcado == null) {
+                    synchronized (writerOutput) {
+                        protocolo.tratarSemId(saida);
+                        writerOutput.flush();
+                    }
+                    continue;
                 }
 
-                // processamento normal
-                String resposta = messageProcessor.processMessage(cmd);
-                if (resposta != null && !resposta.isEmpty()) {
-                    for (String linha : resposta.split("\r")) {
-                        writerOutput.write(linha);
-                        writerOutput.newLine();
+                marcado = new ProtocoloTexto.ComandoMarcado(marcado.id(),
+                        completarLote(readerInput, marcado.comando(), marcado.id()));
+
+                if (marcado.isQuit()) {
+                    // responde BYE só depois que os comandos em voo terminarem
+                    emVoo.acquireUninterruptibly(MAX_EM_VOO_PIPELINE);
+                    emVoo.release(MAX_EM_VOO_PIPELINE);
+                    synchronized (writerOutput) {
+                        protocolo.tratarMarcado(marcado, saida);
+                        writerOutput.flush();
                     }
+                    break;
                 }
-                // marca fim da resposta
-                writerOutput.write("<END>");
-                writerOutput.newLine();
-                writerOutput.flush();
+
+                emVoo.acquireUninterruptibly();
+                ProtocoloTexto.ComandoMarcado comando = marcado;
+                Thread.ofVirtual().start(() -> {
+                    try {
+                        BlocoPipeline resposta = new BlocoPipeline(writerOutput);
+                        protocolo.tratarMarcado(comando, resposta);
+                        resposta.descarregar();
+                    } catch (IOException e) {
+                        System.err.println("Erro ao responder comando " + comando.id() + ": " + e.getMessage());
+                    } finally {
+                        emVoo.release();
+                    }
+                });
             }
-        } catch (IOException e) {
-            System.err.println("Erro ao processar conexão: " + e.getMessage());
+        } finally {
+            // não fecha o socket com respostas pendentes
+            emVoo.acquireUninterruptibly(MAX_EM_VOO_PIPELINE);
         }
     }
-    
-    
+
+    /**
+     * Acumula as linhas de um comando do modo pipeline e as entrega ao writer
+     * compartilhado em blocos; como toda linha leva o id, blocos de comandos
+     * diferentes podem se intercalar.
+     */
+    private static final class BlocoPipeline implements ResponseSink {
+        private final BufferedWriter destino;
+        private final StringBuilder bloco = new StringBuilder();
+
+        BlocoPipeline(BufferedWriter destino) {
+            this.destino = destino;
+        }
+
+        @Override
+        public void linha(CharSequence linha) throws IOException {
+            bloco.append(linha).append(ProtocoloTexto.NOVA_LINHA);
+            if (bloco.length() >= ProtocoloTexto.TAMANHO_BLOCO) {
+                descarregar();
+            }
+        }
+
+        void descarregar() throws IOException {
+            synchronized (destino) {
+                destino.append(bloco);
+                destino.flush();
+            }
+            bloco.setLength(0);
+        }
+    }
+
+    /**
+     * Junta ao comando as linhas de sub-comandos de um BATCH (no modo pipeline
+     * essas linhas também vêm prefixadas pelo id). As de um BATCH acima do limite
+     * são lidas e descartadas.
+     */
+    private static String completarLote(BufferedReader readerInput, String comando, String id) throws IOException {
+        int restantes = ProtocoloTexto.linhasSeguintes(comando);
+        if (restantes == 0) {
+            return comando;
+        }
+        StringBuilder lote = ProtocoloTexto.descartarLote(restantes) ? null : new StringBuilder(comando);
+        String linha;
+        while (restantes-- > 0 && (linha = readerInput.readLine()) != null) {
+            if (lote != null) {
+                lote.append('\n').append(id == null ? linha : ProtocoloTexto.semPrefixo(id, linha));
+            }
+        }
+        return lote == null ? comando : lote.toString();
+    }
+
+    /**
+     * Monta o MessageProcessor. Com um diretório de dados, carrega o último
+     * snapshot, reaplica o journal que estiver lá e passa a registrar nele as
+     * alterações.
+     */
+    static MessageProcessor criarProcessador(String dados, Journal.Durabilidade durabilidade, long intervaloMs,
+            long intervaloSnapshotS, boolean passageirosCompactos, long cacheBytes) throws IOException {
+        CacheListagens cache = cacheBytes > 0 ? new CacheListagens(cacheBytes) : null;
+        if (dados == null) {
+            return new MessageProcessor(new RepositoryManager(passageirosCompactos), null, cache);
+        }
+
+        // a recuperação (e a compactação) usa processadores sem journal, para não registrar de novo o que já está no arquivo
+        Armazenamento armazenamento = Armazenamento.abrir(Paths.get(dados),
+                () -> new RepositoryManager(passageirosCompactos), repositorio -> new MessageProcessor(repositorio)::reproduzir,
+                durabilidade, intervaloMs, intervaloSnapshotS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                armazenamento.close();
+            } catch (IOException e) {
+                System.err.println("Erro ao fechar o journal: " + e.getMessage());
+            }
+        }));
+        System.out.println("Persistência em " + dados + " (durabilidade: " + durabilidade.name().toLowerCase()
+                + ", snapshot: " + (intervaloSnapshotS > 0 ? "a cada " + intervaloSnapshotS + " s" : "desligado") + ")");
+        return new MessageProcessor(armazenamento.getRepositoryManager(), armazenamento.getJournal(), cache);
+    }
+
+    /**
+     * Uso: Server [porta] [--max-sessoes=N] [--motor=bloqueante|nio] [--loops=N]
+     *             [--dados=diretorio] [--durabilidade=sempre|intervalo[:ms]|so]
+     *             [--snapshot-intervalo=segundos] [--passageiros=objetos|compacto]
+     *             [--cache-listagens=MB]
+     */
     public static void main(String[] args) {
         int port = 8080;
+        int maxSessoes = MAX_SESSOES_PADRAO;
+        int loops = NioServer.LOOPS_PADRAO;
+        String motor = "bloqueante";
+        String dados = null;
+        Journal.Durabilidade durabilidade = Journal.Durabilidade.SEMPRE;
+        long intervaloMs = Journal.INTERVALO_PADRAO_MS;
+        long intervaloSnapshotS = Armazenamento.INTERVALO_SNAPSHOT_PADRAO_S;
+        String passageiros = "objetos";
+        long cacheMb = CacheListagens.LIMITE_PADRAO_BYTES / (1024 * 1024);
+        boolean portaInformada = false;
 
-        if (args.length > 1) {
-            System.err.println("Muitos argumentos!");
-            return;
-        }
-        if (args.length == 1) {
-            try { port = Integer.parseInt(args[0]); }
-            catch (NumberFormatException e) {
-                System.err.println("Porta inválida, precisa ser um número");
+        for (String arg : args) {
+            if (arg.startsWith("--max-sessoes=")) {
+                try { maxSessoes = Integer.parseInt(arg.substring("--max-sessoes=".length())); }
+                catch (NumberFormatException e) {
+                    System.err.println("Máximo de sessões inválido, precisa ser um número");
+                    return;
+                }
+            } else if (arg.startsWith("--loops=")) {
+                try { loops = Integer.parseInt(arg.substring("--loops=".length())); }
+                catch (NumberFormatException e) {
+                    System.err.println("Número de event loops inválido, precisa ser um número");
+                    return;
+                }
+            } else if (arg.startsWith("--motor=")) {
+                motor = arg.substring("--motor=".length()).toLowerCase();
+            } else if (arg.startsWith("--dados=")) {
+                dados = arg.substring("--dados=".length());
+            } else if (arg.startsWith("--durabilidade=")) {
+                String[] politica = arg.substring("--durabilidade=".length()).split(":");
+                try {
+                    durabilidade = Journal.Durabilidade.valueOf(politica[0].toUpperCase());
+                    if (politica.length > 1) {
+                        intervaloMs = Long.parseLong(politica[1]);
+                    }
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Durabilidade inválida: use sempre, intervalo[:ms] ou so");
+                    return;
+                }
+            } else if (arg.startsWith("--passageiros=")) {
+                passageiros = arg.substring("--passageiros=".length()).toLowerCase();
+            } else if (arg.startsWith("--snapshot-intervalo=")) {
+                try { intervaloSnapshotS = Long.parseLong(arg.substring("--snapshot-intervalo=".length())); }
+                catch (NumberFormatException e) {
+                    System.err.println("Intervalo de snapshot inválido, precisa ser um número de segundos");
+                    return;
+                }
+            } else if (arg.startsWith("--cache-listagens=")) {
+                try { cacheMb = Long.parseLong(arg.substring("--cache-listagens=".length())); }
+                catch (NumberFormatException e) {
+                    System.err.println("Tamanho do cache de listagens inválido, precisa ser um número de MB");
+                    return;
+                }
+            } else if (arg.startsWith("--")) {
+                System.err.println("Opção desconhecida: " + arg);
+                return;
+            } else if (portaInformada) {
+                System.err.println("Muitos argumentos!");
+                return;
+            } else {
+                portaInformada = true;
+                try { port = Integer.parseInt(arg); }
+                catch (NumberFormatException e) {
+                    System.err.println("Porta inválida, precisa ser um número");
+                }
             }
         }
         if (port < 1 || port > 65535) {
             System.err.println("Porta deve estar entre 1 e 65535!");
             return;
         }
+        if (maxSessoes < 1) {
+            System.err.println("Máximo de sessões deve ser pelo menos 1!");
+            return;
+        }
+        if (loops < 1) {
+            System.err.println("Número de event loops deve ser pelo menos 1!");
+            return;
+        }
+
+        if (intervaloMs < 1) {
+            System.err.println("Intervalo de durabilidade deve ser pelo menos 1 ms!");
+            return;
+        }
+        if (intervaloSnapshotS < 0) {
+            System.err.println("Intervalo de snapshot não pode ser negativo (0 desliga)!");
+            return;
+        }
+        if (cacheMb < 0) {
+            System.err.println("Cache de listagens não pode ser negativo (0 desliga)!");
+            return;
+        }
+        if (!motor.equals("bloqueante") && !motor.equals("nio")) {
+            System.err.println("Motor desconhecido: " + motor + " (use bloqueante ou nio)");
+            return;
+        }
+        if (!passageiros.equals("objetos") && !passageiros.equals("compacto")) {
+            System.err.println("Armazenamento de passageiros desconhecido: " + passageiros + " (use objetos ou compacto)");
+            return;
+        }
 
-        new Server(port).iniciar();
+        MessageProcessor messageProcessor;
+        try {
+            messageProcessor = criarProcessador(dados, durabilidade, intervaloMs, intervaloSnapshotS,
+                    passageiros.equals("compacto"), cacheMb * 1024 * 1024);
+        } catch (IOException e) {
+            System.err.println("Erro ao abrir os dados em " + dados + ": " + e.getMessage());
+            return;
+        }
+
+        if (motor.equals("nio")) {
+            new NioServer(port, loops, messageProcessor).iniciar();
+        } else {
+            new Server(port, maxSessoes, messageProcessor).iniciar();
+        }
     }
  
 }
\ No newline at end of file
@@ -0,0 +1,141 @@
+package crud.service;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * Respostas de listagens já montadas, por texto do comando e versão dos
+ * repositórios (ver RepositoryManager.getVersao()).
+ *
+ * <p>Uma resposta só é servida enquanto a versão for a mesma em que foi montada,
+ * então qualquer escrita a invalida sem precisar avisar o cache. Guarda no máximo
+ * limiteBytes (contando um byte por caractere), descartando as usadas há mais tempo;
+ * respostas maiores que um quarto do limite não são guardadas e continuam saindo
+ * direto do repositório, linha a linha. O comando de uma resposta dessas fica
+ * marcado: as próximas montagens dele só medem o tamanho, sem copiar as linhas,
+ * até a resposta voltar a caber.
+ */
+public final class CacheListagens {
+    public static final long LIMITE_PADRAO_BYTES = 64L * 1024 * 1024;
+    // Comandos marcados como grandes demais lembrados ao mesmo tempo
+    private static final int MAX_GRANDES = 256;
+
+    /**
+     * Monta a resposta no sink (a listagem de verdade)
+     */
+    @FunctionalInterface
+    public interface Montagem {
+        void montar(ResponseSink sink) throws IOException;
+    }
+
+    private record Entrada(long versao, String linhas) {
+    }
+
+    private final long limiteBytes;
+    private final long limiteEntrada;
+    // em ordem de acesso: a primeira é a usada há mais tempo
+    private final LinkedHashMap<String, Entrada> entradas = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+    // comandos cuja última resposta passou de limiteEntrada
+    private final Set<String> grandes = Collections.newSetFromMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> mais) {
+            return size() > MAX_GRANDES;
+        }
+    });
+
+    public CacheListagens(long limiteBytes) {
+        this.limiteBytes = limiteBytes;
+        this.limiteEntrada = limiteBytes / 4;
+    }
+
+    /**
+     * Envia a resposta guardada para o comando, se for da versão atual; senão a
+     * monta, enviando e guardando as linhas ao mesmo tempo. Só guarda se nenhuma
+     * escrita começou ou terminou durante a montagem.
+     */
+    public void responder(String comando, LongSupplier versao, Montagem montagem, ResponseSink sink) throws IOException {
+        long antes = versao.getAsLong();
+        String pronta = buscar(comando, antes);
+        if (pronta != null) {
+            sink.linhas(pronta);
+            return;
+        }
+
+        Gravacao gravacao = new Gravacao(sink, !grande(comando));
+        montagem.montar(gravacao);
+        if (gravacao.bloco != null && versao.getAsLong() == antes) {
+            guardar(comando, new Entrada(antes, gravacao.bloco.toString()));
+        }
+        marcar(comando, gravacao.tamanho > limiteEntrada);
+    }
+
+    private synchronized boolean grande(String comando) {
+        return grandes.contains(comando);
+    }
+
+    private synchronized void marcar(String comando, boolean grande) {
+        if (grande) {
+            grandes.add(comando);
+        } else {
+            grandes.remove(comando);
+        }
+    }
+
+    private synchronized String buscar(String comando, long versao) {
+        Entrada entrada = entradas.get(comando);
+        return entrada != null && entrada.versao() == versao ? entrada.linhas() : null;
+    }
+
+    private synchronized void guardar(String comando, Entrada nova) {
+        Entrada anterior = entradas.put(comando, nova);
+        if (anterior != null) {
+            bytes -= anterior.linhas().length();
+        }
+        bytes += nova.linhas().length();
+        Iterator<Entrada> antigas = entradas.values().iterator();
+        while (bytes > limiteBytes && antigas.hasNext()) {
+            bytes -= antigas.next().linhas().length();
+            antigas.remove();
+        }
+    }
+
+    public synchronized int size() {
+        return entradas.size();
+    }
+
+    /**
+     * Repassa as linhas ao sink, medindo a resposta, e as copia para o bloco até o
+     * limite de uma entrada
+     */
+    private final class Gravacao implements ResponseSink {
+        private final ResponseSink destino;
+        // null quando a resposta passou do limite (ou já se sabia grande): não vai para o cache
+        private StringBuilder bloco;
+        private long tamanho;
+
+        Gravacao(ResponseSink destino, boolean copiar) {
+            this.destino = destino;
+            this.bloco = copiar ? new StringBuilder(256) : null;
+        }
+
+        @Override
+        public void linha(CharSequence linha) throws IOException {
+            destino.linha(linha);
+            tamanho += linha.length() + 1;
+            if (bloco == null) {
+                return;
+            }
+            if (tamanho > limiteEntrada) {
+                bloco = null;
+            } else {
+                bloco.append(linha).append('\n');
+            }
+        }
+    }
+}
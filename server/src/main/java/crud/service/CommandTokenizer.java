@@ -0,0 +1,191 @@
+package crud.service;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * Separa um comando OPERACAO;TIPO;dados... em campos guardando apenas posições
+ * no texto recebido, sem regex nem arrays de String. Os campos só viram String
+ * quando um handler pede {@link #get(int)}; operação e tipo são resolvidos por
+ * tabela, sem {@code toUpperCase}.
+ *
+ * <p>Reaproveitável: {@link #reset(CharSequence)} prepara a instância para o próximo
+ * comando. Não é thread-safe; cada thread usa a sua.
+ */
+public final class CommandTokenizer {
+    // Tabelas indexadas pelo tamanho do nome, para resolver operação/tipo sem alocar
+    private static final Operacao[][] OPERACOES = porTamanho(Operacao.values(), Operacao[][]::new, Operacao[]::new);
+    private static final Tipo[][] TIPOS = porTamanho(Tipo.values(), Tipo[][]::new, Tipo[]::new);
+
+    private CharSequence fonte;
+    private String[] campos;          // quando os campos já vêm separados (protocolo binário)
+    private int inicioTexto;
+    private int fimTexto;
+    private int[] inicios = new int[16];
+    private int[] fins = new int[16];
+    private int quantidade;
+
+    /**
+     * Prepara o tokenizer para um comando texto. Equivale a {@code linha.trim().split(";")}:
+     * espaços nas pontas são ignorados e campos vazios no final são descartados.
+     */
+    public CommandTokenizer reset(CharSequence linha) {
+        this.fonte = linha;
+        this.campos = null;
+        this.quantidade = 0;
+
+        int inicio = 0;
+        int fim = linha.length();
+        while (inicio < fim && linha.charAt(inicio) <= ' ') {
+            inicio++;
+        }
+        while (fim > inicio && linha.charAt(fim - 1) <= ' ') {
+            fim--;
+        }
+        inicioTexto = inicio;
+        fimTexto = fim;
+        if (inicio == fim) {
+            return this;
+        }
+
+        int campoInicio = inicio;
+        for (int i = inicio; i <= fim; i++) {
+            if (i == fim || linha.charAt(i) == ';') {
+                adicionar(campoInicio, i);
+                campoInicio = i + 1;
+            }
+        }
+        // mesma regra do String.split: descarta campos vazios no final
+        while (quantidade > 0 && inicios[quantidade - 1] == fins[quantidade - 1]) {
+            quantidade--;
+        }
+        return this;
+    }
+
+    /**
+     * Prepara o tokenizer com campos que já chegaram separados
+     */
+    public CommandTokenizer reset(String[] campos) {
+        this.fonte = null;
+        this.campos = campos;
+        this.quantidade = campos.length;
+        return this;
+    }
+
+    private void adicionar(int inicio, int fim) {
+        if (quantidade == inicios.length) {
+            inicios = Arrays.copyOf(inicios, quantidade * 2);
+            fins = Arrays.copyOf(fins, quantidade * 2);
+        }
+        inicios[quantidade] = inicio;
+        fins[quantidade] = fim;
+        quantidade++;
+    }
+
+    /**
+     * Quantidade de campos (equivalente ao length do array do split)
+     */
+    public int size() {
+        return quantidade;
+    }
+
+    /**
+     * Verdadeiro se o comando só tinha espaços
+     */
+    public boolean isEmpty() {
+        return campos == null ? inicioTexto == fimTexto : campos.length == 0;
+    }
+
+    /**
+     * Materializa o campo i como String
+     */
+    public String get(int i) {
+        if (campos != null) {
+            return campos[i];
+        }
+        return fonte.subSequence(inicios[i], fins[i]).toString();
+    }
+
+    /**
+     * Converte o campo i em int sem criar String intermediária
+     *
+     * @throws NumberFormatException se o campo não for um inteiro válido
+     */
+    public int getInt(int i) {
+        if (campos != null) {
+            return Integer.parseInt(campos[i]);
+        }
+        return Integer.parseInt(fonte, inicios[i], fins[i], 10);
+    }
+
+    /**
+     * Operação do campo 0, ou null se não for reconhecida
+     */
+    public Operacao operacao() {
+        return quantidade > 0 ? resolver(OPERACOES, 0) : null;
+    }
+
+    /**
+     * Tipo do campo 1, ou null se não for reconhecido
+     */
+    public Tipo tipo() {
+        return quantidade > 1 ? resolver(TIPOS, 1) : null;
+    }
+
+    /**
+     * Comando completo, já sem espaços nas pontas
+     */
+    public String texto() {
+        if (campos != null) {
+            return String.join(";", campos);
+        }
+        return fonte.subSequence(inicioTexto, fimTexto).toString();
+    }
+
+    private <E extends Enum<E>> E resolver(E[][] tabela, int campo) {
+        if (campos != null) {
+            return resolver(tabela, campos[campo], 0, campos[campo].length());
+        }
+        return resolver(tabela, fonte, inicios[campo], fins[campo]);
+    }
+
+    private static <E extends Enum<E>> E resolver(E[][] tabela, CharSequence texto, int inicio, int fim) {
+        int tamanho = fim - inicio;
+        if (tamanho >= tabela.length || tabela[tamanho] == null) {
+            return null;
+        }
+        for (E candidato : tabela[tamanho]) {
+            if (iguaisIgnorandoCaixa(candidato.name(), texto, inicio)) {
+                return candidato;
+            }
+        }
+        return null;
+    }
+
+    private static boolean iguaisIgnorandoCaixa(String nome, CharSequence texto, int inicio) {
+        for (int i = 0; i < nome.length(); i++) {
+            char c = texto.charAt(inicio + i);
+            if (c != nome.charAt(i) && Character.toUpperCase(c) != nome.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static <E extends Enum<E>> E[][] porTamanho(E[] valores,
+            IntFunction<E[][]> novaTabela, IntFunction<E[]> novoGrupo) {
+        int maior = 0;
+        for (E valor : valores) {
+            maior = Math.max(maior, valor.name().length());
+        }
+        E[][] tabela = novaTabela.apply(maior + 1);
+        for (E valor : valores) {
+            int tamanho = valor.name().length();
+            E[] grupo = tabela[tamanho] == null ? novoGrupo.apply(0) : tabela[tamanho];
+            grupo = Arrays.copyOf(grupo, grupo.length + 1);
+            grupo[grupo.length - 1] = valor;
+            tabela[tamanho] = grupo;
+        }
+        return tabela;
+    }
+}
@@ -1,21 +1,71 @@
 package crud.service;
 
 import crud.model.*;
+import crud.persistence.Journal;
 import crud.repository.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 
 /**
  * Classe para tratar as mensagens recebidas do cliente
  */
 public class MessageProcessor {
+    // Limite de sub-comandos em um único BATCH
+    public static final int MAX_BATCH = 10_000;
+    // Maior página aceita em LIST;TIPO;limite[;cursor]
+    public static final int MAX_PAGINA = 10_000;
+
+    // Um tokenizer reaproveitado por thread evita alocar a cada mensagem
+    private static final ThreadLocal<CommandTokenizer> TOKENIZERS = ThreadLocal.withInitial(CommandTokenizer::new);
+
     private final RepositoryManager repositoryManager;
     private final PessoaRepository pessoaRepository;
     private final AviaoRepository aviaoRepository;
+    private final Journal journal;
+    private final CacheListagens cacheListagens;
+    private final ReservaChaves reservas = new ReservaChaves();
 
     public MessageProcessor(RepositoryManager repositoryManager) {
+        this(repositoryManager, null);
+    }
+
+    /**
+     * @param journal onde registrar os comandos que alteram os repositórios; null desativa a persistência
+     */
+    public MessageProcessor(RepositoryManager repositoryManager, Journal journal) {
+        this(repositoryManager, journal, null);
+    }
+
+    /**
+     * @param cacheListagens respostas de LIST e LIST_TRIPULANTES já montadas; null desativa o cache
+     */
+    public MessageProcessor(RepositoryManager repositoryManager, Journal journal, CacheListagens cacheListagens) {
         this.repositoryManager = repositoryManager;
         this.pessoaRepository = repositoryManager.getPessoaRepository();
         this.aviaoRepository = repositoryManager.getAviaoRepository();
+        this.journal = journal;
+        this.cacheListagens = cacheListagens;
+        if (journal != null) {
+            journal.setCorte(this::semAlteracoesPendentes);
+        }
+    }
+
+    /**
+     * Executa a ação com todas as chaves reservadas: como cada alteração registrada
+     * fica reservada até ser anexada ao journal, nenhuma está no meio do caminho
+     * nem começa enquanto a ação roda
+     */
+    private void semAlteracoesPendentes(Journal.AcaoNoCorte acao) throws IOException {
+        reservas.travar(ReservaChaves.TODAS);
+        try {
+            acao.executar();
+        } finally {
+            reservas.liberar(ReservaChaves.TODAS);
+        }
     }
 
     /**
@@ -23,36 +73,265 @@ public class MessageProcessor {
      * Formato geral: OPERACAO;TIPO;dados...
      */
     public String processMessage(String message) {
+        StringBuilder response = new StringBuilder();
         try {
-            if (message == null || message.trim().isEmpty()) {
-                return "Mensagem vazia";
+            processMessage(message, linha -> {
+                if (response.length() > 0) {
+                    response.append('\n');
+                }
+                response.append(linha);
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // não acontece: as linhas ficam em memória
+        }
+        return response.toString();
+    }
+
+    /**
+     * Processa a mensagem entregando a resposta linha a linha em sink.
+     * Listagens são enviadas enquanto o repositório é percorrido, sem montar
+     * a resposta inteira em memória.
+     */
+    public void processMessage(String message, ResponseSink sink) throws IOException {
+        if (message == null) {
+            sink.linha("Mensagem vazia");
+            return;
+        }
+        CommandTokenizer cmd = TOKENIZERS.get().reset(message);
+        if (cmd.isEmpty()) {
+            sink.linha("Mensagem vazia");
+            return;
+        }
+        processar(cmd, sink);
+    }
+
+    /**
+     * Processa um comando cujos campos já chegaram separados (protocolo binário),
+     * sem passar pela tokenização da mensagem texto. fields[0] é a operação e fields[1] o tipo,
+     * na mesma posição em que estariam na mensagem texto. BATCH não é aceito aqui,
+     * pois seus sub-comandos são linhas da mensagem texto.
+     */
+    public void processFields(String[] fields, ResponseSink sink) throws IOException {
+        processar(TOKENIZERS.get().reset(fields), sink);
+    }
+
+    private void processar(CommandTokenizer cmd, ResponseSink sink) throws IOException {
+        Operacao operation = cmd.size() < 2 ? null : cmd.operacao();
+        if (operation != Operacao.LIST && operation != Operacao.LIST_TRIPULANTES) {
+            emitir(registrar(operation, cmd), sink);
+            return;
+        }
+
+        try {
+            if (cacheListagens == null) {
+                listar(operation, cmd, sink);
+            } else {
+                cacheListagens.responder(cmd.texto(), repositoryManager::getVersao,
+                        saida -> listar(operation, cmd, saida), sink);
             }
+        } catch (IOException e) {
+            throw e; // falha ao enviar: a conexão é que está com problema
+        } catch (Exception e) {
+            System.err.println("Erro ao processar mensagem: " + e.getMessage());
+            e.printStackTrace();
+            sink.linha("Erro interno do servidor: " + e.getMessage());
+        }
+    }
+
+    private void listar(Operacao operation, CommandTokenizer cmd, ResponseSink sink) throws IOException {
+        if (operation == Operacao.LIST) {
+            handleList(cmd.tipo(), cmd, sink);
+        } else {
+            handleListTripulantes(cmd, sink);
+        }
+    }
 
-            String[] fields = message.trim().split(";");
-            if (fields.length < 2) {
+    /**
+     * Executa o comando e, se ele alterou os repositórios, o registra no journal.
+     * As chaves do comando ficam reservadas da alteração até a anexação do registro,
+     * então comandos sobre as mesmas chaves entram no arquivo na ordem em que foram
+     * aplicados; a espera pelo fsync acontece depois, já sem a reserva.
+     * Sem journal as alterações também reservam suas chaves, para que o desfazer do
+     * modo ATOMICO de um BATCH encontre as chaves como as deixou.
+     */
+    private String registrar(Operacao operation, CommandTokenizer cmd) {
+        boolean lote = operation == Operacao.BATCH;
+        if (!lote && !isAlteracao(operation)) {
+            return processar(cmd);
+        }
+
+        long faixas = lote ? faixasDoLote(cmd.texto()) : faixas(operation, cmd);
+        String resposta;
+        long fim;
+        reservas.travar(faixas);
+        try {
+            if (journal != null) {
+                try {
+                    journal.verificarDisponivel();
+                } catch (RuntimeException e) {
+                    System.err.println("Erro ao registrar no journal: " + e.getMessage());
+                    return "Erro interno do servidor: " + e.getMessage();
+                }
+            }
+            String registro;
+            if (lote) {
+                // registra só os sub-comandos que permaneceram aplicados
+                StringBuilder aplicados = journal != null ? new StringBuilder() : null;
+                resposta = handleBatch(cmd.texto(), aplicados);
+                registro = aplicados != null && aplicados.length() > 0 ? aplicados.toString() : null;
+            } else {
+                resposta = processar(cmd);
+                registro = isSucesso(resposta) ? cmd.texto() : null;
+            }
+            if (registro == null || journal == null) {
+                return resposta;
+            }
+            try {
+                fim = journal.anexar(registro);
+            } catch (RuntimeException e) {
+                return naoRegistrado(e);
+            }
+        } finally {
+            reservas.liberar(faixas);
+        }
+
+        try {
+            journal.aguardar(fim);
+        } catch (RuntimeException e) {
+            return naoRegistrado(e);
+        }
+        return resposta;
+    }
+
+    /**
+     * A alteração já está em memória e os demais clientes já podem vê-la, então a
+     * resposta diz que ela foi aplicada, mas pode se perder em um reinício
+     */
+    private static String naoRegistrado(RuntimeException e) {
+        System.err.println("Erro ao registrar no journal: " + e.getMessage());
+        return "Alteração aplicada, mas não gravada no journal (pode se perder ao reiniciar): " + e.getMessage();
+    }
+
+    /**
+     * Faixas de {@link ReservaChaves} das chaves que o comando pode alterar. Um comando
+     * malformado pode ficar sem alguma delas: ele falha na validação sem alterar nada.
+     */
+    private static long faixas(Operacao operacao, CommandTokenizer cmd) {
+        long faixas = 0;
+        try {
+            if (operacao == Operacao.ADD_TRIPULANTE || operacao == Operacao.REMOVE_TRIPULANTE) {
+                // OPERACAO;modelo;anoFabricacao;marca;cpf
+                if (cmd.size() >= 5) {
+                    faixas |= ReservaChaves.pessoa(cmd.get(4));
+                    faixas |= ReservaChaves.aviao(cmd.get(1), cmd.getInt(2), cmd.get(3));
+                }
+            } else if (cmd.size() >= 3 && cmd.tipo() != Tipo.AVIAO) {
+                // Pessoas: OPERACAO;TIPO;cpf;...
+                faixas |= ReservaChaves.pessoa(cmd.get(2));
+            } else if (cmd.size() >= 5) {
+                // OPERACAO;AVIAO;modelo;anoFabricacao;marca[;novoModelo;novoAno;novaMarca]
+                faixas |= ReservaChaves.aviao(cmd.get(2), cmd.getInt(3), cmd.get(4));
+                if (operacao == Operacao.UPDATE && cmd.size() >= 8) {
+                    faixas |= ReservaChaves.aviao(cmd.get(5), cmd.getInt(6), cmd.get(7));
+                }
+            }
+        } catch (NumberFormatException e) {
+            // ano inválido: o comando vai falhar antes de alterar o avião
+        }
+        return faixas;
+    }
+
+    /**
+     * União das faixas dos sub-comandos de um BATCH
+     */
+    private long faixasDoLote(String message) {
+        String[] linhas = message.split("\n");
+        CommandTokenizer subComando = new CommandTokenizer();
+        long faixas = 0;
+        for (int i = 1; i < linhas.length && faixas != ReservaChaves.TODAS; i++) {
+            subComando.reset(linhas[i]);
+            Operacao operacao = subComando.operacao();
+            if (isAlteracao(operacao)) {
+                faixas |= faixas(operacao, subComando);
+            }
+        }
+        return faixas;
+    }
+
+    /**
+     * Se a mensagem é uma escrita que espera o fsync do journal antes de responder
+     * ({@link Journal.Durabilidade#SEMPRE}). Quem atende várias conexões na mesma
+     * thread deve executá-la fora dela.
+     */
+    public boolean aguardaDisco(String message) {
+        if (journal == null || journal.getDurabilidade() != Journal.Durabilidade.SEMPRE) {
+            return false;
+        }
+        int fimLinha = message.indexOf('\n');
+        Operacao operacao = TOKENIZERS.get().reset(fimLinha < 0 ? message : message.substring(0, fimLinha)).operacao();
+        return operacao == Operacao.BATCH || isAlteracao(operacao);
+    }
+
+    /**
+     * Reaplica um registro do journal (um comando por linha) sem registrá-lo de novo
+     */
+    public void reproduzir(String registro) {
+        CommandTokenizer cmd = TOKENIZERS.get();
+        for (String linha : registro.split("\n")) {
+            processar(cmd.reset(linha));
+        }
+    }
+
+    /**
+     * Entrega uma resposta já pronta, uma linha por vez
+     */
+    private static void emitir(String resposta, ResponseSink sink) throws IOException {
+        int inicio = 0;
+        for (int i = 0; i < resposta.length(); i++) {
+            char c = resposta.charAt(i);
+            if (c == '\n' || c == '\r') {
+                sink.linha(resposta.substring(inicio, i));
+                inicio = i + 1;
+            }
+        }
+        if (inicio < resposta.length()) {
+            sink.linha(resposta.substring(inicio));
+        }
+    }
+
+    private String processar(CommandTokenizer cmd) {
+        try {
+            if (cmd.size() < 2) {
                 return "Formato inválido. Use: OPERACAO;TIPO;dados...";
             }
 
-            String operation = fields[0].toUpperCase();
-            String type = fields[1].toUpperCase();
+            Operacao operation = cmd.operacao();
+            Tipo type = cmd.tipo();
+            if (operation == null) {
+                return "Operação não reconhecida: " + cmd.get(0).toUpperCase();
+            }
 
             switch (operation) {
-                case "INSERT":
-                    return handleInsert(type, fields);
-                case "UPDATE":
-                    return handleUpdate(type, fields);
-                case "GET":
-                    return handleGet(type, fields);
-                case "DELETE":
-                    return handleDelete(type, fields);
-                case "LIST":
-                    return handleList(type, fields);
-                case "ADD_TRIPULANTE":
-                    return handleAddTripulante(fields);
-                case "REMOVE_TRIPULANTE":
-                    return handleRemoveTripulante(fields);
-                case "LIST_TRIPULANTES":
-                    return handleListTripulantes(fields);
+                case INSERT:
+                    return handleInsert(type, cmd);
+                case UPDATE:
+                    return handleUpdate(type, cmd);
+                case GET:
+                    return handleGet(type, cmd);
+                case DELETE:
+                    return handleDelete(type, cmd);
+                case LIST:
+                case LIST_TRIPULANTES:
+                    // listagens normalmente vão direto para o sink; aqui a resposta fica em memória
+                    return processMessage(cmd.texto());
+                case ADD_TRIPULANTE:
+                    return handleAddTripulante(cmd);
+                case REMOVE_TRIPULANTE:
+                    return handleRemoveTripulante(cmd);
+                case BATCH:
+                    return handleBatch(cmd.texto(), null);
+                case FIND_AVIOES:
+                    return handleFindAvioes(cmd);
                 default:
                     return "Operação não reconhecida: " + operation;
             }
@@ -63,29 +342,39 @@ public class MessageProcessor {
         }
     }
 
+    /**
+     * Nome do tipo como o cliente enviou, para mensagens de erro
+     */
+    private static String nomeTipo(CommandTokenizer cmd) {
+        return cmd.get(1).toUpperCase();
+    }
+
     // ========== OPERAÇÕES INSERT ==========
-    private String handleInsert(String type, String[] fields) {
-        switch (type) {
-            case "TRIPULANTE":
-                return insertTripulante(fields);
-            case "PASSAGEIRO":
-                return insertPassageiro(fields);
-            case "AVIAO":
-                return insertAviao(fields);
-            default:
-                return "Tipo inválido para inserção: " + type;
+    private String handleInsert(Tipo type, CommandTokenizer cmd) {
+        if (type != null) {
+            switch (type) {
+                case TRIPULANTE:
+                    return insertTripulante(cmd);
+                case PASSAGEIRO:
+                    return insertPassageiro(cmd);
+                case AVIAO:
+                    return insertAviao(cmd);
+                default:
+                    break;
+            }
         }
+        return "Tipo inválido para inserção: " + nomeTipo(cmd);
     }
 
-    private String insertTripulante(String[] fields) {
+    private String insertTripulante(CommandTokenizer cmd) {
         // INSERT;TRIPULANTE;cpf;nome;endereco;salario;cargo
-        if (fields.length < 7) {
+        if (cmd.size() < 7) {
             return "Dados insuficientes. Formato: INSERT;TRIPULANTE;cpf;nome;endereco;salario;cargo";
         }
 
         try {
             Pessoa tripulante = PessoaFactory.criarPessoa("TRIPULANTE",
-                    new String[]{fields[2], fields[3], fields[4], fields[5], fields[6]});
+                    new String[]{cmd.get(2), cmd.get(3), cmd.get(4), cmd.get(5), cmd.get(6)});
             pessoaRepository.insert(tripulante);
 
             System.out.println("Tripulante inserido: " + tripulante);
@@ -95,15 +384,15 @@ public class MessageProcessor {
         }
     }
 
-    private String insertPassageiro(String[] fields) {
+    private String insertPassageiro(CommandTokenizer cmd) {
         // INSERT;PASSAGEIRO;cpf;nome;endereco;poltrona
-        if (fields.length < 6) {
+        if (cmd.size() < 6) {
             return "Dados insuficientes. Formato: INSERT;PASSAGEIRO;cpf;nome;endereco;poltrona";
         }
 
         try {
             Pessoa passageiro = PessoaFactory.criarPessoa("PASSAGEIRO",
-                    new String[]{fields[2], fields[3], fields[4], fields[5]});
+                    new String[]{cmd.get(2), cmd.get(3), cmd.get(4), cmd.get(5)});
             pessoaRepository.insert(passageiro);
 
             System.out.println("Passageiro inserido: " + passageiro);
@@ -113,15 +402,15 @@ public class MessageProcessor {
         }
     }
 
-    private String insertAviao(String[] fields) {
+    private String insertAviao(CommandTokenizer cmd) {
         // INSERT;AVIAO;modelo;anoFabricacao;marca
-        if (fields.length < 5) {
+        if (cmd.size() < 5) {
             return "Dados insuficientes. Formato: INSERT;AVIAO;modelo;anoFabricacao;marca";
         }
 
         try {
             // Ordem correta: modelo, anoFabricacao, marca
-            Aviao aviao = new Aviao(fields[2], Integer.parseInt(fields[3]), fields[4]);
+            Aviao aviao = new Aviao(cmd.get(2), cmd.getInt(3), cmd.get(4));
             aviaoRepository.insert(aviao);
 
             System.out.println("Avião inserido: " + aviao);
@@ -134,58 +423,61 @@ public class MessageProcessor {
     }
 
     // ========== OPERAÇÕES UPDATE ==========
-    private String handleUpdate(String type, String[] fields) {
-        switch (type) {
-            case "TRIPULANTE":
-                return updateTripulante(fields);
-            case "PASSAGEIRO":
-                return updatePassageiro(fields);
-            case "AVIAO":
-                return updateAviao(fields);
-            default:
-                return "Tipo inválido para atualização: " + type;
+    private String handleUpdate(Tipo type, CommandTokenizer cmd) {
+        if (type != null) {
+            switch (type) {
+                case TRIPULANTE:
+                    return updateTripulante(cmd);
+                case PASSAGEIRO:
+                    return updatePassageiro(cmd);
+                case AVIAO:
+                    return updateAviao(cmd);
+                default:
+                    break;
+            }
         }
+        return "Tipo inválido para atualização: " + nomeTipo(cmd);
     }
 
-    private String updateTripulante(String[] fields) {
+    private String updateTripulante(CommandTokenizer cmd) {
         // UPDATE;TRIPULANTE;cpf;nome;endereco;salario;cargo
-        if (fields.length < 7) {
+        if (cmd.size() < 7) {
             return "Dados insuficientes para atualização de tripulante";
         }
 
         try {
-            boolean success = pessoaRepository.update(fields[2], fields[3], fields[4], fields[5], fields[6]);
+            boolean success = pessoaRepository.update(cmd.get(2), cmd.get(3), cmd.get(4), cmd.get(5), cmd.get(6));
             return success ? "Tripulante atualizado com sucesso" : "Tripulante não encontrado";
         } catch (Exception e) {
             return "Erro ao atualizar tripulante: " + e.getMessage();
         }
     }
 
-    private String updatePassageiro(String[] fields) {
+    private String updatePassageiro(CommandTokenizer cmd) {
         // UPDATE;PASSAGEIRO;cpf;nome;endereco;poltrona
-        if (fields.length < 6) {
+        if (cmd.size() < 6) {
             return "Dados insuficientes para atualização de passageiro";
         }
 
         try {
-            boolean success = pessoaRepository.update(fields[2], fields[3], fields[4], fields[5]);
+            boolean success = pessoaRepository.update(cmd.get(2), cmd.get(3), cmd.get(4), cmd.get(5));
             return success ? "Passageiro atualizado com sucesso" : "Passageiro não encontrado";
         } catch (Exception e) {
             return "Erro ao atualizar passageiro: " + e.getMessage();
         }
     }
 
-    private String updateAviao(String[] fields) {
+    private String updateAviao(CommandTokenizer cmd) {
         // UPDATE;AVIAO;modeloAtual;anoAtual;marcaAtual;novoModelo;novoAno;novaMarca
-        if (fields.length < 8) {
+        if (cmd.size() < 8) {
             return "Dados insuficientes. Formato: UPDATE;AVIAO;modeloAtual;anoAtual;marcaAtual;novoModelo;novoAno;novaMarca";
         }
 
         try {
-            int anoAtual = Integer.parseInt(fields[3]);
-            int novoAno = Integer.parseInt(fields[6]);
+            int anoAtual = cmd.getInt(3);
+            int novoAno = cmd.getInt(6);
 
-            boolean success = aviaoRepository.update(fields[2], anoAtual, fields[4], fields[5], novoAno, fields[7]);
+            boolean success = aviaoRepository.update(cmd.get(2), anoAtual, cmd.get(4), cmd.get(5), novoAno, cmd.get(7));
             return success ? "Avião atualizado com sucesso" : "Avião não encontrado";
         } catch (NumberFormatException e) {
             return "Anos devem ser números válidos";
@@ -195,21 +487,24 @@ public class MessageProcessor {
     }
 
     // ========== OPERAÇÕES GET ==========
-    private String handleGet(String type, String[] fields) {
-        switch (type) {
-            case "TRIPULANTE":
-            case "PASSAGEIRO":
-                return getPessoa(fields);
-            case "AVIAO":
-                return getAviao(fields);
-            default:
-                return "Tipo inválido para busca: " + type;
+    private String handleGet(Tipo type, CommandTokenizer cmd) {
+        if (type != null) {
+            switch (type) {
+                case TRIPULANTE:
+                case PASSAGEIRO:
+                    return getPessoa(cmd);
+                case AVIAO:
+                    return getAviao(cmd);
+                default:
+                    break;
+            }
         }
+        return "Tipo inválido para busca: " + nomeTipo(cmd);
     }
 
-    private String getPessoa(String[] fields) {
+    private String getPessoa(CommandTokenizer cmd) {
         // GET;TIPO;cpf
-        if (fields.length < 3) {
+        if (cmd.size() < 3) {
             return "CPF não informado";
         }
 
@@ -217,13 +512,13 @@ public class MessageProcessor {
             return "Sem pessoas cadastradas";
         }
 
-        Pessoa pessoa = pessoaRepository.get(fields[2]);
+        Pessoa pessoa = pessoaRepository.get(cmd.get(2));
         return pessoa != null ? pessoa.getTipo() + ";" + pessoa.toDataString() : "Pessoa não encontrada";
     }
 
-    private String getAviao(String[] fields) {
+    private String getAviao(CommandTokenizer cmd) {
         // GET;AVIAO;modelo;anoFabricacao;marca
-        if (fields.length < 5) {
+        if (cmd.size() < 5) {
             return "Dados insuficientes. Formato: GET;AVIAO;modelo;anoFabricacao;marca";
         }
 
@@ -232,7 +527,7 @@ public class MessageProcessor {
         }
 
         try {
-            Aviao aviao = aviaoRepository.get(fields[2], Integer.parseInt(fields[3]), fields[4]);
+            Aviao aviao = aviaoRepository.get(cmd.get(2), cmd.getInt(3), cmd.get(4));
             return aviao != null ? aviao.toFullDataString() : "Avião não encontrado";
         } catch (NumberFormatException e) {
             return "Ano deve ser um número válido";
@@ -240,21 +535,24 @@ public class MessageProcessor {
     }
 
     // ========== OPERAÇÕES DELETE ==========
-    private String handleDelete(String type, String[] fields) {
-        switch (type) {
-            case "TRIPULANTE":
-            case "PASSAGEIRO":
-                return deletePessoa(fields);
-            case "AVIAO":
-                return deleteAviao(fields);
-            default:
-                return "Tipo inválido para remoção: " + type;
+    private String handleDelete(Tipo type, CommandTokenizer cmd) {
+        if (type != null) {
+            switch (type) {
+                case TRIPULANTE:
+                case PASSAGEIRO:
+                    return deletePessoa(cmd);
+                case AVIAO:
+                    return deleteAviao(cmd);
+                default:
+                    break;
+            }
         }
+        return "Tipo inválido para remoção: " + nomeTipo(cmd);
     }
 
-    private String deletePessoa(String[] fields) {
+    private String deletePessoa(CommandTokenizer cmd) {
         // DELETE;TIPO;cpf
-        if (fields.length < 3) {
+        if (cmd.size() < 3) {
             return "CPF não informado";
         }
 
@@ -262,13 +560,14 @@ public class MessageProcessor {
             return "Sem pessoas cadastradas";
         }
 
-        boolean success = pessoaRepository.delete(fields[2]);
+        // também tira a pessoa da tripulação dos aviões
+        boolean success = repositoryManager.deletePessoa(cmd.get(2));
         return success ? "Pessoa removida com sucesso" : "Pessoa não encontrada";
     }
 
-    private String deleteAviao(String[] fields) {
+    private String deleteAviao(CommandTokenizer cmd) {
         // DELETE;AVIAO;modelo;anoFabricacao;marca
-        if (fields.length < 5) {
+        if (cmd.size() < 5) {
             return "Dados insuficientes para remoção de avião";
         }
 
@@ -277,7 +576,7 @@ public class MessageProcessor {
         }
 
         try {
-            boolean success = aviaoRepository.delete(fields[2], Integer.parseInt(fields[3]), fields[4]);
+            boolean success = aviaoRepository.delete(cmd.get(2), cmd.getInt(3), cmd.get(4));
             return success ? "Avião removido com sucesso" : "Avião não encontrado";
         } catch (NumberFormatException e) {
             return "Ano deve ser um número válido";
@@ -285,114 +584,506 @@ public class MessageProcessor {
     }
 
     // ========== OPERAÇÕES LIST ==========
-    private String handleList(String type, String[] fields) {
-        switch (type) {
-            case "TRIPULANTE":
-                return listTripulantes();
-            case "PASSAGEIRO":
-                return listPassageiros();
-            case "AVIAO":
-                return listAvioes();
-            case "ALL":
-                return listAll();
-            default:
-                return "Tipo inválido para listagem: " + type;
+    // As listagens escrevem direto no sink, uma linha por registro
+    private void handleList(Tipo type, CommandTokenizer cmd, ResponseSink sink) throws IOException {
+        if (type != null) {
+            switch (type) {
+                case TRIPULANTE:
+                    if (cmd.size() > 2) {
+                        listPessoasPagina("TRIPULANTE", cmd, sink);
+                    } else {
+                        listTripulantes(sink);
+                    }
+                    return;
+                case PASSAGEIRO:
+                    if (cmd.size() > 2) {
+                        listPessoasPagina("PASSAGEIRO", cmd, sink);
+                    } else {
+                        listPassageiros(sink);
+                    }
+                    return;
+                case AVIAO:
+                    if (cmd.size() > 2) {
+                        listAvioesPagina(cmd, sink);
+                    } else {
+                        listAvioes(sink);
+                    }
+                    return;
+                case ALL:
+                    listAll(sink);
+                    return;
+                default:
+                    break;
+            }
         }
+        sink.linha("Tipo inválido para listagem: " + nomeTipo(cmd));
     }
 
-    private String listTripulantes() {
+    private void listTripulantes(ResponseSink sink) throws IOException {
         List<Pessoa> tripulantes = pessoaRepository.listByType("TRIPULANTE");
-        return formatPessoaList(tripulantes);
+        formatPessoaList(tripulantes, sink);
     }
 
-    private String listPassageiros() {
+    private void listPassageiros(ResponseSink sink) throws IOException {
         List<Pessoa> passageiros = pessoaRepository.listByType("PASSAGEIRO");
-        return formatPessoaList(passageiros);
+        formatPessoaList(passageiros, sink);
     }
 
-    private String listAvioes() {
+    private void listAvioes(ResponseSink sink) throws IOException {
         List<Aviao> avioes = aviaoRepository.list();
 
         if (avioes.isEmpty()) {
-            return "0";
+            sink.linha("0");
+            return;
         }
 
-        StringBuilder response = new StringBuilder();
-        response.append(String.format("%02d", avioes.size())).append("\n");
-
+        sink.linha(String.format("%02d", avioes.size()));
         for (Aviao aviao : avioes) {
-            response.append(aviao.toFullDataString()).append("\n");
+            sink.linha(aviao.toFullDataString());
         }
+    }
 
-        return response.toString().trim();
+    private void listAll(ResponseSink sink) throws IOException {
+        // tudo sai do mesmo instante; as linhas são enviadas direto da visão, que fica
+        // aberta durante o envio (ela não trava as escritas)
+        try (Visao visao = repositoryManager.abrirVisao()) {
+            int tripulantes = visao.quantidade("TRIPULANTE");
+            int passageiros = visao.quantidade("PASSAGEIRO");
+            int avioes = visao.quantidadeAvioes();
+
+            // Estatísticas gerais, dos contadores no corte
+            sink.linha("ESTATISTICAS;" + RepositoryManager.formatarEstatisticas(
+                    tripulantes + passageiros, tripulantes, passageiros, avioes));
+
+            StringBuilder linha = new StringBuilder(128);
+            Visao.Destino<Pessoa> pessoa = p -> {
+                linha.setLength(0);
+                linha.append(p.getTipo()).append(';').append(p.toDataString());
+                sink.linha(linha);
+            };
+
+            // Tripulantes
+            sink.linha("TRIPULANTES;" + tripulantes);
+            visao.pessoas("TRIPULANTE", pessoa);
+
+            // Passageiros
+            sink.linha("PASSAGEIROS;" + passageiros);
+            visao.pessoas("PASSAGEIRO", pessoa);
+
+            // Aviões
+            sink.linha("AVIOES;" + avioes);
+            visao.avioes(Aviao::toFullDataString, dados -> {
+                linha.setLength(0);
+                linha.append("AVIAO;").append(dados);
+                sink.linha(linha);
+            });
+        }
     }
 
-    private String listAll() {
-        StringBuilder response = new StringBuilder();
+    private void formatPessoaList(List<Pessoa> pessoas, ResponseSink sink) throws IOException {
+        if (pessoas.isEmpty()) {
+            sink.linha("0");
+            return;
+        }
 
-        // Estatísticas gerais
-        response.append("ESTATISTICAS;").append(repositoryManager.getEstatsticas()).append("\n");
+        sink.linha(String.format("%02d", pessoas.size()));
+        enviarPessoas(pessoas, sink);
+    }
 
-        // Tripulantes
-        List<Pessoa> tripulantes = pessoaRepository.listByType("TRIPULANTE");
-        response.append("TRIPULANTES;").append(tripulantes.size()).append("\n");
-        for (Pessoa tripulante : tripulantes) {
-            response.append("TRIPULANTE;").append(tripulante.toDataString()).append("\n");
+    /**
+     * Uma linha TIPO;dados por pessoa, reaproveitando o mesmo buffer
+     */
+    private void enviarPessoas(List<Pessoa> pessoas, ResponseSink sink) throws IOException {
+        StringBuilder linha = new StringBuilder(128);
+        for (Pessoa pessoa : pessoas) {
+            linha.setLength(0);
+            linha.append(pessoa.getTipo()).append(';').append(pessoa.toDataString());
+            sink.linha(linha);
         }
+    }
 
-        // Passageiros
-        List<Pessoa> passageiros = pessoaRepository.listByType("PASSAGEIRO");
-        response.append("PASSAGEIROS;").append(passageiros.size()).append("\n");
-        for (Pessoa passageiro : passageiros) {
-            response.append("PASSAGEIRO;").append(passageiro.toDataString()).append("\n");
+    // ========== PAGINAÇÃO ==========
+    /*
+     * LIST;TIPO;limite[;cursor] devolve no máximo 'limite' registros, no mesmo formato
+     * da listagem completa. Se ainda houver registros, a última linha é CURSOR;token
+     * e o token deve ser enviado no próximo pedido. O token é opaco para o cliente:
+     * guarda a chave do último registro entregue (CPF, ou modelo;ano;marca).
+     */
+    private void listPessoasPagina(String tipo, CommandTokenizer cmd, ResponseSink sink) throws IOException {
+        // LIST;TIPO;limite[;cursor]
+        int limite = lerLimite(cmd);
+        if (limite < 0) {
+            sink.linha("Limite deve ser um número entre 1 e " + MAX_PAGINA);
+            return;
+        }
+        String aposCpf = null;
+        if (cmd.size() > 3) {
+            aposCpf = lerCursor(cmd.get(3));
+            if (aposCpf == null) {
+                sink.linha("Cursor inválido");
+                return;
+            }
         }
 
-        // Aviões
-        List<Aviao> avioes = aviaoRepository.list();
-        response.append("AVIOES;").append(avioes.size()).append("\n");
+        // pede um a mais só para saber se existe próxima página
+        List<Pessoa> pessoas = pessoaRepository.listByType(tipo, aposCpf, limite + 1);
+        boolean temMais = pessoas.size() > limite;
+        if (temMais) {
+            pessoas = pessoas.subList(0, limite);
+        }
+        formatPessoaList(pessoas, sink);
+        if (temMais) {
+            sink.linha("CURSOR;" + criarCursor(pessoas.get(limite - 1).getCpf()));
+        }
+    }
+
+    private void listAvioesPagina(CommandTokenizer cmd, ResponseSink sink) throws IOException {
+        // LIST;AVIAO;limite[;cursor]
+        int limite = lerLimite(cmd);
+        if (limite < 0) {
+            sink.linha("Limite deve ser um número entre 1 e " + MAX_PAGINA);
+            return;
+        }
+        String modelo = null;
+        int ano = 0;
+        String marca = null;
+        if (cmd.size() > 3) {
+            String chave = lerCursor(cmd.get(3));
+            String[] partes = chave == null ? null : chave.split(";", -1);
+            if (partes == null || partes.length != 3) {
+                sink.linha("Cursor inválido");
+                return;
+            }
+            try {
+                ano = Integer.parseInt(partes[1]);
+            } catch (NumberFormatException e) {
+                sink.linha("Cursor inválido");
+                return;
+            }
+            modelo = partes[0];
+            marca = partes[2];
+        }
+
+        List<Aviao> avioes = aviaoRepository.list(modelo, ano, marca, limite + 1);
+        boolean temMais = avioes.size() > limite;
+        if (temMais) {
+            avioes = avioes.subList(0, limite);
+        }
+        if (avioes.isEmpty()) {
+            sink.linha("0");
+            return;
+        }
+        sink.linha(String.format("%02d", avioes.size()));
         for (Aviao aviao : avioes) {
-            response.append("AVIAO;").append(aviao.toFullDataString()).append("\n");
+            sink.linha(aviao.toFullDataString());
+        }
+        if (temMais) {
+            Aviao ultimo = avioes.get(limite - 1);
+            sink.linha("CURSOR;" + criarCursor(ultimo.getModelo() + ";" + ultimo.getAnoFabricacao() + ";" + ultimo.getMarca()));
         }
+    }
 
-        return response.toString().trim();
+    /**
+     * Limite da página (campo 2), ou -1 se não for um número entre 1 e MAX_PAGINA
+     */
+    private static int lerLimite(CommandTokenizer cmd) {
+        try {
+            int limite = cmd.getInt(2);
+            return limite >= 1 && limite <= MAX_PAGINA ? limite : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
-    private String formatPessoaList(List<Pessoa> pessoas) {
-        if (pessoas.isEmpty()) {
-            return "0";
+    private static String criarCursor(String chave) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(chave.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Chave guardada no cursor, ou null se o token não for válido
+     */
+    private static String lerCursor(String token) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(token.trim()), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
         }
+    }
 
-        StringBuilder response = new StringBuilder();
-        response.append(String.format("%02d", pessoas.size())).append("\n");
+    // ========== OPERAÇÃO BATCH ==========
+    /**
+     * BATCH;MODO;N seguido de N linhas, uma por sub-comando.
+     * MODO = PARCIAL executa cada sub-comando de forma independente;
+     * MODO = ATOMICO desfaz os sub-comandos já aplicados assim que um falhar.
+     * Resposta: BATCH;sucessos;total e uma linha por sub-comando (i;OK, i;ERRO;msg,
+     * i;DESFEITO ou i;IGNORADO). Um sub-comando que não pôde ser desfeito continua
+     * aplicado: sai como i;ERRO;Aplicado, mas... e conta em sucessos.
+     *
+     * @param aplicados se não for null, recebe os sub-comandos que ficaram aplicados, um por linha
+     */
+    private String handleBatch(String message, StringBuilder aplicados) {
+        String[] linhas = message.split("\n");
+        String[] header = linhas[0].trim().split(";");
+        if (header.length < 3) {
+            return "Dados insuficientes. Formato: BATCH;ATOMICO|PARCIAL;N seguido de N linhas";
+        }
+        String modo = header[1].toUpperCase();
+        if (!modo.equals("ATOMICO") && !modo.equals("PARCIAL")) {
+            return "Modo inválido para BATCH: " + modo + " (use ATOMICO ou PARCIAL)";
+        }
 
-        for (Pessoa pessoa : pessoas) {
-            response.append(pessoa.getTipo()).append(";").append(pessoa.toDataString()).append("\n");
+        int total;
+        try {
+            total = Integer.parseInt(header[2].trim());
+        } catch (NumberFormatException e) {
+            return "Quantidade de sub-comandos deve ser um número válido";
+        }
+        if (total < 0 || total > MAX_BATCH) {
+            return "Quantidade de sub-comandos deve estar entre 0 e " + MAX_BATCH;
+        }
+        if (linhas.length - 1 != total) {
+            return "BATCH informou " + total + " sub-comandos, mas recebeu " + (linhas.length - 1);
+        }
+
+        boolean atomico = modo.equals("ATOMICO");
+        String[] resultados = new String[total];
+        List<Desfazer> desfazer = new ArrayList<>();
+        int sucessos = 0;
+        int falha = -1;
+        // tokenizer próprio: o da thread ainda aponta para a mensagem do BATCH
+        CommandTokenizer subComando = new CommandTokenizer();
+
+        for (int i = 0; i < total; i++) {
+            subComando.reset(linhas[i + 1]);
+            Operacao operacao = subComando.operacao();
+
+            if (!isAlteracao(operacao)) {
+                String nome = subComando.size() > 0 ? subComando.get(0).toUpperCase() : "";
+                resultados[i] = "ERRO;Operação não permitida em BATCH: " + nome;
+            } else {
+                Runnable desfaz = atomico ? prepararDesfazer(operacao, subComando) : null;
+                String resposta = processar(subComando);
+                if (isSucesso(resposta)) {
+                    resultados[i] = "OK";
+                    sucessos++;
+                    if (aplicados != null) {
+                        aplicados.append(subComando.texto()).append('\n');
+                    }
+                    if (desfaz != null) {
+                        desfazer.add(new Desfazer(i, subComando.texto(), desfaz));
+                    }
+                    continue;
+                }
+                resultados[i] = "ERRO;" + resposta;
+            }
+
+            if (atomico) {
+                falha = i;
+                break;
+            }
+        }
+
+        if (falha >= 0) {
+            for (int i = 0; i < total; i++) {
+                if (i < falha) {
+                    resultados[i] = "DESFEITO";
+                } else if (i > falha) {
+                    resultados[i] = "IGNORADO";
+                }
+            }
+            sucessos = 0;
+            // desfaz na ordem inversa da aplicação; o que não puder ser desfeito continua
+            // aplicado e é informado (e registrado) como tal
+            String[] permanecem = new String[total];
+            for (int i = desfazer.size() - 1; i >= 0; i--) {
+                Desfazer d = desfazer.get(i);
+                try {
+                    d.acao().run();
+                } catch (RuntimeException e) {
+                    resultados[d.indice()] = "ERRO;Aplicado, mas não foi possível desfazer: " + e.getMessage();
+                    permanecem[d.indice()] = d.comando();
+                    sucessos++;
+                }
+            }
+            if (aplicados != null) {
+                aplicados.setLength(0);
+                for (String comando : permanecem) {
+                    if (comando != null) {
+                        aplicados.append(comando).append('\n');
+                    }
+                }
+            }
         }
 
+        StringBuilder response = new StringBuilder();
+        response.append("BATCH;").append(sucessos).append(";").append(total).append("\n");
+        for (int i = 0; i < total; i++) {
+            response.append(i + 1).append(";").append(resultados[i]).append("\n");
+        }
         return response.toString().trim();
     }
 
+    /**
+     * Ação que desfaz o sub-comando de índice 'indice' de um BATCH ATOMICO
+     */
+    private record Desfazer(int indice, String comando, Runnable acao) {
+    }
+
+    /**
+     * Operações que alteram os repositórios: as únicas aceitas em BATCH e as registradas no journal
+     */
+    private boolean isAlteracao(Operacao operacao) {
+        if (operacao == null) {
+            return false;
+        }
+        switch (operacao) {
+            case INSERT:
+            case UPDATE:
+            case DELETE:
+            case ADD_TRIPULANTE:
+            case REMOVE_TRIPULANTE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Inserções respondem vazio e as demais operações de escrita terminam em "com sucesso"
+     */
+    private boolean isSucesso(String resposta) {
+        return resposta.isEmpty() || resposta.endsWith("com sucesso");
+    }
+
+    /**
+     * Captura o estado atual do que o sub-comando vai alterar e devolve a ação que o restaura.
+     * Retorna null quando não há o que capturar (o sub-comando vai falhar na validação).
+     */
+    private Runnable prepararDesfazer(Operacao operacao, CommandTokenizer cmd) {
+        try {
+            if (cmd.size() < 3) {
+                return null;
+            }
+
+            if (operacao == Operacao.ADD_TRIPULANTE || operacao == Operacao.REMOVE_TRIPULANTE) {
+                // OPERACAO;modelo;anoFabricacao;marca;cpf
+                if (cmd.size() < 5) {
+                    return null;
+                }
+                String modelo = cmd.get(1);
+                int ano = cmd.getInt(2);
+                String marca = cmd.get(3);
+                String cpf = cmd.get(4);
+                Aviao aviao = aviaoRepository.get(modelo, ano, marca);
+                if (aviao == null) {
+                    return null;
+                }
+                Pessoa anterior = aviao.getTripulantePorCpf(cpf);
+                if (operacao == Operacao.ADD_TRIPULANTE) {
+                    return anterior != null ? () -> { } : () -> aviaoRepository.removerTripulante(modelo, ano, marca, cpf);
+                }
+                return anterior == null ? () -> { } : () -> aviaoRepository.adicionarTripulante(modelo, ano, marca, anterior);
+            }
+
+            if (cmd.tipo() == Tipo.AVIAO) {
+                // OPERACAO;AVIAO;modelo;anoFabricacao;marca[;novoModelo;novoAno;novaMarca]
+                if (cmd.size() < 5) {
+                    return null;
+                }
+                String modelo = cmd.get(2);
+                int ano = cmd.getInt(3);
+                String marca = cmd.get(4);
+                Aviao anterior = aviaoRepository.get(modelo, ano, marca);
+
+                switch (operacao) {
+                    case INSERT:
+                        return anterior == null
+                                ? () -> aviaoRepository.delete(modelo, ano, marca)
+                                : () -> aviaoRepository.insert(anterior);
+                    case DELETE:
+                        return anterior == null ? null : () -> aviaoRepository.insert(anterior);
+                    case UPDATE:
+                        if (cmd.size() < 8) {
+                            return null;
+                        }
+                        String novoModelo = cmd.get(5);
+                        int novoAno = cmd.getInt(6);
+                        String novaMarca = cmd.get(7);
+                        // se outro cliente ocupou a chave antiga nesse meio tempo, o update falha
+                        // (IllegalStateException) e o BATCH informa que este sub-comando ficou aplicado
+                        return () -> aviaoRepository.update(novoModelo, novoAno, novaMarca, modelo, ano, marca);
+                    default:
+                        return null;
+                }
+            }
+
+            // Pessoas: OPERACAO;TIPO;cpf;...
+            String cpf = cmd.get(2);
+            Pessoa anterior = pessoaRepository.get(cpf);
+            switch (operacao) {
+                case INSERT:
+                    return anterior == null
+                            ? () -> pessoaRepository.delete(cpf)
+                            : () -> pessoaRepository.insert(anterior);
+                case DELETE:
+                    if (anterior == null) {
+                        return null;
+                    }
+                    // o DELETE tira a pessoa das tripulações; o desfazer a devolve a elas
+                    List<Aviao> avioes = aviaoRepository.avioesDoTripulante(cpf);
+                    return () -> {
+                        pessoaRepository.insert(anterior);
+                        for (Aviao aviao : avioes) {
+                            aviaoRepository.adicionarTripulante(aviao.getModelo(), aviao.getAnoFabricacao(),
+                                    aviao.getMarca(), anterior);
+                        }
+                    };
+                case UPDATE:
+                    if (anterior == null) {
+                        return null;
+                    }
+                    // a pessoa é imutável: os campos lidos aqui são todos da mesma versão
+                    String nome = anterior.getNome();
+                    String endereco = anterior.getEndereco();
+                    if (anterior instanceof Tripulante) {
+                        Tripulante t = (Tripulante) anterior;
+                        String salario = String.valueOf(t.getSalario());
+                        String cargo = t.getCargo();
+                        return () -> pessoaRepository.update(cpf, nome, endereco, salario, cargo);
+                    }
+                    String poltrona = ((Passageiro) anterior).getPoltrona();
+                    return () -> pessoaRepository.update(cpf, nome, endereco, poltrona);
+                default:
+                    return null;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     // ========== OPERAÇÕES ESPECÍFICAS DE AVIÕES ==========
-    private String handleAddTripulante(String[] fields) {
+    private String handleAddTripulante(CommandTokenizer cmd) {
         // ADD_TRIPULANTE;modelo;anoFabricacao;marca;cpfTripulante
-        if (fields.length < 5) {
+        if (cmd.size() < 5) {
             return "Dados insuficientes. Formato: ADD_TRIPULANTE;modelo;anoFabricacao;marca;cpfTripulante";
         }
 
         try {
-            String modelo = fields[1];
-            int anoFabricacao = Integer.parseInt(fields[2]);
-            String marca = fields[3];
-            String cpfTripulante = fields[4];
+            String modelo = cmd.get(1);
+            int anoFabricacao = cmd.getInt(2);
+            String marca = cmd.get(3);
+            String cpfTripulante = cmd.get(4);
 
             // Verifica se o avião existe
             if (!aviaoRepository.exists(modelo, anoFabricacao, marca)) {
                 return "Avião não encontrado";
             }
 
-            // Verifica se a pessoa existe
-            Pessoa pessoa = pessoaRepository.get(cpfTripulante);
-            if (pessoa == null) {
+            // Verifica se a pessoa existe; adiciona a versão atual, sem que um UPDATE a troque no meio
+            boolean[] success = {false};
+            boolean encontrada = pessoaRepository.comPessoa(cpfTripulante, pessoa ->
+                    success[0] = aviaoRepository.adicionarTripulante(modelo, anoFabricacao, marca, pessoa));
+            if (!encontrada) {
                 return "Pessoa não encontrada";
             }
 
@@ -400,8 +1091,7 @@ public class MessageProcessor {
 //                return "Apenas tripulantes podem ser adicionados ao avião";
 //            }
 
-            boolean success = aviaoRepository.adicionarTripulante(modelo, anoFabricacao, marca, pessoa);
-            return success ? "Pessoa adicionado ao avião com sucesso" : "Erro ao adicionar Pessoa";
+            return success[0] ? "Pessoa adicionado ao avião com sucesso" : "Erro ao adicionar Pessoa";
 
         } catch (NumberFormatException e) {
             return "Ano deve ser um número válido";
@@ -410,17 +1100,17 @@ public class MessageProcessor {
         }
     }
 
-    private String handleRemoveTripulante(String[] fields) {
+    private String handleRemoveTripulante(CommandTokenizer cmd) {
         // REMOVE_TRIPULANTE;modelo;anoFabricacao;marca;cpfTripulante
-        if (fields.length < 5) {
+        if (cmd.size() < 5) {
             return "Dados insuficientes. Formato: REMOVE_TRIPULANTE;modelo;anoFabricacao;marca;cpfTripulante";
         }
 
         try {
-            String modelo = fields[1];
-            int anoFabricacao = Integer.parseInt(fields[2]);
-            String marca = fields[3];
-            String cpfTripulante = fields[4];
+            String modelo = cmd.get(1);
+            int anoFabricacao = cmd.getInt(2);
+            String marca = cmd.get(3);
+            String cpfTripulante = cmd.get(4);
 
             if (!aviaoRepository.exists(modelo, anoFabricacao, marca)) {
                 return "Avião não encontrado";
@@ -436,28 +1126,51 @@ public class MessageProcessor {
         }
     }
 
-    private String handleListTripulantes(String[] fields) {
+    private void handleListTripulantes(CommandTokenizer cmd, ResponseSink sink) throws IOException {
         // LIST_TRIPULANTES;modelo;anoFabricacao;marca
-        if (fields.length < 4) {
-            return "Dados insuficientes. Formato: LIST_TRIPULANTES;modelo;anoFabricacao;marca";
+        if (cmd.size() < 4) {
+            sink.linha("Dados insuficientes. Formato: LIST_TRIPULANTES;modelo;anoFabricacao;marca");
+            return;
         }
 
+        List<Pessoa> tripulantes;
         try {
-            String modelo = fields[1];
-            int anoFabricacao = Integer.parseInt(fields[2]);
-            String marca = fields[3];
+            String modelo = cmd.get(1);
+            int anoFabricacao = cmd.getInt(2);
+            String marca = cmd.get(3);
 
             if (!aviaoRepository.exists(modelo, anoFabricacao, marca)) {
-                return "Avião não encontrado";
+                sink.linha("Avião não encontrado");
+                return;
             }
 
-            List<Pessoa> tripulantes = aviaoRepository.listarTripulantes(modelo, anoFabricacao, marca);
-            return formatPessoaList(tripulantes);
-
+            tripulantes = aviaoRepository.listarTripulantes(modelo, anoFabricacao, marca);
         } catch (NumberFormatException e) {
-            return "Ano deve ser um número válido";
+            sink.linha("Ano deve ser um número válido");
+            return;
         } catch (Exception e) {
-            return "Erro ao listar tripulantes: " + e.getMessage();
+            sink.linha("Erro ao listar tripulantes: " + e.getMessage());
+            return;
         }
+        formatPessoaList(tripulantes, sink);
+    }
+
+    private String handleFindAvioes(CommandTokenizer cmd) {
+        // FIND_AVIOES;cpf
+        String cpf = cmd.get(1);
+        List<Aviao> avioes = aviaoRepository.avioesDoTripulante(cpf);
+
+        if (avioes.isEmpty()) {
+            return "0";
+        }
+
+        StringBuilder response = new StringBuilder();
+        response.append(String.format("%02d", avioes.size())).append("\n");
+
+        for (Aviao aviao : avioes) {
+            response.append(aviao.toFullDataString()).append("\n");
+        }
+
+        return response.toString().trim();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,17 @@
+package crud.service;
+
+/**
+ * Operações reconhecidas pelo MessageProcessor (primeiro campo do comando)
+ */
+public enum Operacao {
+    INSERT,
+    UPDATE,
+    GET,
+    DELETE,
+    LIST,
+    ADD_TRIPULANTE,
+    REMOVE_TRIPULANTE,
+    LIST_TRIPULANTES,
+    BATCH,
+    FIND_AVIOES
+}
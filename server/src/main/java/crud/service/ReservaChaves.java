@@ -0,0 +1,54 @@
+package crud.service;
+
+import crud.repository.AviaoKey;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Reserva as chaves (CPFs e aviões) que um comando pode alterar, do início da
+ * alteração até o registro dela no journal (sem journal, até o fim da alteração,
+ * o que protege o desfazer de um BATCH ATOMICO). Comandos com chaves em comum executam
+ * um de cada vez, na mesma ordem em que entram no arquivo; os demais seguem em
+ * paralelo e, como não mexem nas mesmas entradas, reaplicá-los em outra ordem dá
+ * o mesmo resultado.
+ *
+ * <p>As chaves caem em {@value #FAIXAS} locks escolhidos pelo hash; o conjunto de
+ * um comando é um long com um bit por faixa, travado sempre em ordem crescente.
+ * A reserva é tomada antes de qualquer lock dos repositórios.
+ */
+final class ReservaChaves {
+    private static final int FAIXAS = 64;
+    /** Todas as faixas: trava qualquer comando que altere os repositórios */
+    static final long TODAS = -1L;
+
+    private final ReentrantLock[] locks = new ReentrantLock[FAIXAS];
+
+    ReservaChaves() {
+        for (int i = 0; i < FAIXAS; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    static long pessoa(String cpf) {
+        return faixa(cpf.hashCode());
+    }
+
+    static long aviao(String modelo, int anoFabricacao, String marca) {
+        return faixa(new AviaoKey(modelo, anoFabricacao, marca).hashCode() * 31 + 1);
+    }
+
+    private static long faixa(int hash) {
+        return 1L << ((hash ^ (hash >>> 16)) & (FAIXAS - 1));
+    }
+
+    void travar(long faixas) {
+        for (long resto = faixas; resto != 0; resto &= resto - 1) {
+            locks[Long.numberOfTrailingZeros(resto)].lock();
+        }
+    }
+
+    void liberar(long faixas) {
+        for (long resto = faixas; resto != 0; resto &= resto - 1) {
+            locks[Long.numberOfTrailingZeros(resto)].unlock();
+        }
+    }
+}
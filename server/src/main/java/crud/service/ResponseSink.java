@@ -0,0 +1,32 @@
+package crud.service;
+
+import java.io.IOException;
+
+/**
+ * Destino das linhas de uma resposta. Permite que listagens grandes sejam
+ * enviadas à medida que o repositório é percorrido, sem montar a resposta
+ * inteira em memória.
+ */
+@FunctionalInterface
+public interface ResponseSink {
+    /**
+     * Recebe uma linha da resposta, sem o separador. A linha pode ser um buffer
+     * reaproveitado pelo chamador, então só é válida durante a chamada.
+     */
+    void linha(CharSequence linha) throws IOException;
+
+    /**
+     * Recebe várias linhas de uma vez, cada uma terminada por '\n' (ex.: uma
+     * resposta guardada em cache). Por padrão as entrega uma a uma; sinks de
+     * texto podem copiar o bloco inteiro.
+     */
+    default void linhas(CharSequence bloco) throws IOException {
+        int inicio = 0;
+        for (int i = 0; i < bloco.length(); i++) {
+            if (bloco.charAt(i) == '\n') {
+                linha(bloco.subSequence(inicio, i));
+                inicio = i + 1;
+            }
+        }
+    }
+}
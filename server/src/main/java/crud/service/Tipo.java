@@ -0,0 +1,11 @@
+package crud.service;
+
+/**
+ * Tipos de registro aceitos no segundo campo do comando
+ */
+public enum Tipo {
+    TRIPULANTE,
+    PASSAGEIRO,
+    AVIAO,
+    ALL
+}
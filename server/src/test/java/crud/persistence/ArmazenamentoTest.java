@@ -0,0 +1,95 @@
+package crud.persistence;
+
+import crud.repository.RepositoryManager;
+import crud.service.MessageProcessor;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Queda do servidor: o armazenamento não é fechado e o último segmento do journal
+ * termina num registro incompleto ou corrompido. A reabertura volta ao estado
+ * confirmado antes da queda e continua gravando depois dele.
+ */
+class ArmazenamentoTest {
+    @TempDir
+    Path diretorio;
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void reaberturaDescartaFinalInvalidoDoJournal(boolean crcInvalido) throws IOException {
+        Armazenamento antes = abrir();
+        MessageProcessor processor = new MessageProcessor(antes.getRepositoryManager(), antes.getJournal());
+        processor.processMessage("INSERT;TRIPULANTE;001;Ana;Rua A;5000;Piloto");
+        processor.processMessage("INSERT;AVIAO;A320;2015;Airbus");
+        processor.processMessage("ADD_TRIPULANTE;A320;2015;Airbus;001");
+        // parte do estado vai para o snapshot, o resto fica no segmento novo
+        antes.compactar();
+        processor.processMessage("INSERT;PASSAGEIRO;002;Bruno;Rua B;12C");
+        processor.processMessage("UPDATE;AVIAO;A320;2015;Airbus;A321;2016;Airbus");
+        processor.processMessage("DELETE;TRIPULANTE;001");
+        String esperado = processor.processMessage("LIST;ALL");
+
+        // sem close: com SEMPRE, o que foi respondido já está no arquivo
+        Path segmento = ultimoSegmento();
+        byte[] dados = "INSERT;PASSAGEIRO;003;Carla;Rua C;1A".getBytes(StandardCharsets.UTF_8);
+        try (FileChannel canal = FileChannel.open(segmento, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer registro = ByteBuffer.allocate(8 + dados.length);
+            CRC32 crc = new CRC32();
+            crc.update(dados);
+            registro.putInt(dados.length).putInt((int) crc.getValue() ^ (crcInvalido ? 1 : 0)).put(dados);
+            // sem erro de CRC, o registro fica cortado no meio, como numa queda durante a gravação
+            registro.flip().limit(crcInvalido ? registro.capacity() : 8 + dados.length / 2);
+            canal.write(registro);
+        }
+
+        Armazenamento depois = abrir();
+        try {
+            MessageProcessor reaberto = new MessageProcessor(depois.getRepositoryManager(), depois.getJournal());
+            assertEquals(esperado, reaberto.processMessage("LIST;ALL"));
+            reaberto.processMessage("INSERT;PASSAGEIRO;004;Davi;Rua D;2B");
+            esperado = reaberto.processMessage("LIST;ALL");
+        } finally {
+            depois.close();
+            antes.close();
+        }
+
+        Armazenamento terceira = abrir();
+        try {
+            assertEquals(esperado, new MessageProcessor(terceira.getRepositoryManager()).processMessage("LIST;ALL"));
+        } finally {
+            terceira.close();
+        }
+    }
+
+    private Path ultimoSegmento() throws IOException {
+        try (Stream<Path> arquivos = Files.list(diretorio)) {
+            return arquivos.filter(arquivo -> arquivo.getFileName().toString().matches("journal-\\d+\\.log"))
+                    .max(Comparator.comparingLong(ArmazenamentoTest::geracao))
+                    .orElseThrow();
+        }
+    }
+
+    private static long geracao(Path segmento) {
+        String nome = segmento.getFileName().toString();
+        return Long.parseLong(nome.substring("journal-".length(), nome.length() - ".log".length()));
+    }
+
+    private Armazenamento abrir() throws IOException {
+        return Armazenamento.abrir(diretorio, RepositoryManager::new,
+                repositorio -> new MessageProcessor(repositorio)::reproduzir, Journal.Durabilidade.SEMPRE, 0, 0);
+    }
+}
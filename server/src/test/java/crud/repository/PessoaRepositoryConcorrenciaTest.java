@@ -0,0 +1,165 @@
+package crud.repository;
+
+import crud.model.Passageiro;
+import crud.model.Pessoa;
+import crud.model.Tripulante;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Escritas concorrentes no PessoaRepository (MapaCpf e índices ordenados), nos
+ * modos normal e compacto.
+ */
+class PessoaRepositoryConcorrenciaTest {
+    private static final int THREADS = 8;
+    private static final int OPERACOES = 40_000;
+
+    /**
+     * Cada thread tem seus CPFs e um mapa de referência: toda leitura confere com ele.
+     * Os CPFs incluem zeros à esquerda ("042" e "42" são chaves diferentes) e não numéricos.
+     */
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void cpfsPorThreadBatemComMapaDeReferencia(boolean compacto) throws Exception {
+        PessoaRepository repositorio = new PessoaRepository(compacto);
+        List<Map<String, String>> referencias = executar(THREADS, thread -> {
+            SplittableRandom random = new SplittableRandom(thread);
+            Map<String, String> referencia = new HashMap<>();
+            for (int i = 0; i < OPERACOES; i++) {
+                String cpf = cpfDaThread(thread, random.nextInt(500));
+                String esperado = referencia.get(cpf);
+                Pessoa atual = repositorio.get(cpf);
+                assertEquals(esperado, atual == null ? null : atual.toDataString(), cpf);
+
+                int sorteio = random.nextInt(10);
+                if (sorteio < 4) {
+                    Pessoa nova = new Passageiro(cpf, "Nome " + i, "Rua " + thread, i % 30 + "A");
+                    repositorio.insert(nova);
+                    referencia.put(cpf, nova.toDataString());
+                } else if (sorteio < 7) {
+                    assertEquals(esperado != null, repositorio.delete(cpf), cpf);
+                    referencia.remove(cpf);
+                } else {
+                    boolean atualizada = repositorio.update(cpf, "Alterado " + i, "Av " + thread, "1B");
+                    assertEquals(esperado != null, atualizada, cpf);
+                    if (atualizada) {
+                        referencia.put(cpf, new Passageiro(cpf, "Alterado " + i, "Av " + thread, "1B").toDataString());
+                    }
+                }
+            }
+            return referencia;
+        });
+
+        Map<String, String> esperado = new TreeMap<>();
+        referencias.forEach(esperado::putAll);
+        Map<String, String> obtido = new TreeMap<>();
+        for (Pessoa pessoa : repositorio.list()) {
+            obtido.put(pessoa.getCpf(), pessoa.toDataString());
+        }
+        assertEquals(esperado, obtido);
+        assertEquals(esperado.size(), repositorio.size());
+        assertEquals(esperado.size(), repositorio.listByType("PASSAGEIRO").size());
+    }
+
+    /**
+     * Todas as threads nos mesmos CPFs, trocando inclusive o tipo da pessoa. Sem
+     * um resultado único para comparar, confere que o mapa e os índices terminam
+     * de acordo entre si.
+     */
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void mesmosCpfsMantemMapaEIndicesCoerentes(boolean compacto) throws Exception {
+        PessoaRepository repositorio = new PessoaRepository(compacto);
+        executar(THREADS, thread -> {
+            SplittableRandom random = new SplittableRandom(100 + thread);
+            for (int i = 0; i < OPERACOES; i++) {
+                String cpf = String.format("%03d", random.nextInt(64));
+                switch (random.nextInt(4)) {
+                    case 0 -> repositorio.insert(new Passageiro(cpf, "P" + i, "Rua", "2C"));
+                    case 1 -> repositorio.insert(new Tripulante(cpf, "T" + i, "Rua", 1000 + i, "Piloto"));
+                    case 2 -> repositorio.delete(cpf);
+                    default -> repositorio.update(cpf, "U" + i, "Av", "3D");
+                }
+            }
+            return null;
+        });
+
+        List<Pessoa> todas = repositorio.list();
+        assertEquals(todas.size(), repositorio.size());
+        Set<String> cpfs = new HashSet<>();
+        for (Pessoa pessoa : todas) {
+            assertTrue(cpfs.add(pessoa.getCpf()), "CPF repetido: " + pessoa.getCpf());
+            assertSame(pessoa, repositorio.get(pessoa.getCpf()));
+        }
+        for (int i = 0; i < 64; i++) {
+            String cpf = String.format("%03d", i);
+            assertEquals(cpfs.contains(cpf), repositorio.get(cpf) != null, cpf);
+        }
+
+        List<Pessoa> porTipo = new ArrayList<>(repositorio.listByType("TRIPULANTE"));
+        porTipo.addAll(repositorio.listByType("PASSAGEIRO"));
+        assertEquals(todas.size(), porTipo.size());
+        for (Pessoa pessoa : porTipo) {
+            Pessoa atual = repositorio.get(pessoa.getCpf());
+            assertNotNull(atual, pessoa.getCpf());
+            assertSame(atual, pessoa);
+        }
+    }
+
+    private static String cpfDaThread(int thread, int n) {
+        // metade com zero à esquerda, um quarto não numérico
+        return switch (n % 4) {
+            case 0, 1 -> String.format("0%d%04d", thread, n);
+            case 2 -> String.format("%d%04d", thread, n);
+            default -> "x" + thread + "-" + n;
+        };
+    }
+
+    private interface Tarefa<T> {
+        T executar(int thread) throws Exception;
+    }
+
+    /**
+     * Roda a tarefa em n threads, liberadas juntas, e devolve o resultado de cada uma
+     */
+    static <T> List<T> executar(int n, Tarefa<T> tarefa) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(n);
+        try {
+            CountDownLatch largada = new CountDownLatch(1);
+            List<Future<T>> futuros = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                int thread = i;
+                futuros.add(executor.submit(() -> {
+                    largada.await();
+                    return tarefa.executar(thread);
+                }));
+            }
+            largada.countDown();
+            List<T> resultados = new ArrayList<>();
+            for (Future<T> futuro : futuros) {
+                resultados.add(futuro.get());
+            }
+            return resultados;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package crud.server;
+
+import crud.repository.RepositoryManager;
+import crud.service.MessageProcessor;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Um BATCH acima de {@link MessageProcessor#MAX_BATCH} é recusado inteiro, nos dois
+ * motores: as linhas anunciadas são lidas e descartadas, nenhuma vira um comando
+ * avulso, e o cliente recebe uma resposta só.
+ */
+class BatchAcimaDoLimiteTest {
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void subComandosNaoSaoAplicados(boolean nio) throws Exception {
+        RepositoryManager repositorio = new RepositoryManager();
+        int porta = iniciar(nio, repositorio);
+        try (Socket socket = conectar(porta)) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            int total = MessageProcessor.MAX_BATCH + 1;
+            out.write("BATCH;ATOMICO;" + total + "\n");
+            for (int i = 0; i < total; i++) {
+                out.write("INSERT;PASSAGEIRO;" + i + ";Nome;Rua;1A\n");
+            }
+            out.write("LIST;PASSAGEIRO\n");
+            out.flush();
+
+            List<String> lote = resposta(in);
+            assertEquals(1, lote.size(), String.join(" | ", lote));
+            assertTrue(lote.get(0).contains(String.valueOf(MessageProcessor.MAX_BATCH)), lote.get(0));
+            assertEquals(List.of("0"), resposta(in));
+            assertEquals(0, repositorio.getPessoaRepository().size());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void quantidadeAbsurdaEncerraConexao(boolean nio) throws Exception {
+        RepositoryManager repositorio = new RepositoryManager();
+        int porta = iniciar(nio, repositorio);
+        try (Socket socket = conectar(porta)) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            out.write("BATCH;ATOMICO;" + Integer.MAX_VALUE + "\nINSERT;PASSAGEIRO;1;Nome;Rua;1A\n");
+            out.flush();
+
+            assertNull(in.readLine());
+            assertEquals(0, repositorio.getPessoaRepository().size());
+        }
+    }
+
+    private static List<String> resposta(BufferedReader in) throws IOException {
+        List<String> linhas = new ArrayList<>();
+        String linha;
+        while (!ProtocoloTexto.FIM.equals(linha = in.readLine())) {
+            if (linha == null) {
+                throw new IOException("conexão encerrada antes de " + ProtocoloTexto.FIM);
+            }
+            linhas.add(linha);
+        }
+        return linhas;
+    }
+
+    private static int iniciar(boolean nio, RepositoryManager repositorio) throws IOException {
+        int porta;
+        try (ServerSocket livre = new ServerSocket(0)) {
+            porta = livre.getLocalPort();
+        }
+        MessageProcessor processor = new MessageProcessor(repositorio);
+        Runnable servidor = nio
+                ? () -> new NioServer(porta, 1, processor).iniciar()
+                : () -> new Server(porta, 4, processor).iniciar();
+        Thread thread = new Thread(servidor, "servidor-teste");
+        thread.setDaemon(true);
+        thread.start();
+        return porta;
+    }
+
+    private static Socket conectar(int porta) throws Exception {
+        for (int tentativa = 0; ; tentativa++) {
+            try {
+                return new Socket("localhost", porta);
+            } catch (IOException e) {
+                if (tentativa == 50) {
+                    throw e;
+                }
+                Thread.sleep(20);
+            }
+        }
+    }
+}
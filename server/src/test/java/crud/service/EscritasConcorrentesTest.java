@@ -0,0 +1,167 @@
+package crud.service;
+
+import crud.persistence.Armazenamento;
+import crud.persistence.Journal;
+import crud.repository.RepositoryManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Vários clientes alterando as mesmas pessoas e aviões ao mesmo tempo. O journal
+ * reaplicado em sequência num repositório vazio é o modelo: ele tem de chegar
+ * exatamente ao estado que os clientes deixaram.
+ */
+class EscritasConcorrentesTest {
+    private static final int THREADS = 8;
+    private static final int OPERACOES = 5_000;
+    private static final int CPFS = 32;
+    private static final int AVIOES = 4;
+
+    @TempDir
+    Path diretorio;
+
+    @Test
+    void journalReaplicadoChegaAoMesmoEstado() throws Exception {
+        Armazenamento armazenamento = abrir(Journal.Durabilidade.SO);
+        MessageProcessor processor = new MessageProcessor(armazenamento.getRepositoryManager(),
+                armazenamento.getJournal());
+        for (int i = 0; i < AVIOES; i++) {
+            processor.processMessage("INSERT;AVIAO;M" + i + ";2000;Marca");
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        CountDownLatch largada = new CountDownLatch(1);
+        ConcurrentLinkedQueue<Throwable> erros = new ConcurrentLinkedQueue<>();
+        for (int t = 0; t < THREADS; t++) {
+            SplittableRandom random = new SplittableRandom(t);
+            threads.add(new Thread(() -> {
+                try {
+                    largada.await();
+                    for (int i = 0; i < OPERACOES; i++) {
+                        processor.processMessage(comandoAleatorio(random, i));
+                    }
+                } catch (Throwable e) {
+                    erros.add(e);
+                }
+            }));
+        }
+
+        // leitor sem lock: durante as trocas de chave cada avião aparece uma vez só
+        AtomicBoolean parar = new AtomicBoolean();
+        Thread leitor = new Thread(() -> {
+            try {
+                RepositoryManager repositorio = armazenamento.getRepositoryManager();
+                while (!parar.get()) {
+                    assertEquals(AVIOES, repositorio.getAviaoRepository().size());
+                    String[] linhas = processor.processMessage("LIST;AVIAO").split("\n");
+                    Set<String> modelos = new HashSet<>();
+                    for (int i = 1; i < linhas.length; i++) {
+                        assertTrue(modelos.add(linhas[i].split(";")[0]), "avião repetido: " + linhas[i]);
+                    }
+                    assertEquals(AVIOES, modelos.size(), String.join(" | ", linhas));
+                    conferirListAll(processor.processMessage("LIST;ALL"));
+                }
+            } catch (Throwable e) {
+                erros.add(e);
+            }
+        });
+
+        threads.forEach(Thread::start);
+        leitor.start();
+        largada.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        parar.set(true);
+        leitor.join();
+        if (!erros.isEmpty()) {
+            throw new AssertionError(erros.peek());
+        }
+
+        String esperado = processor.processMessage("LIST;ALL");
+        armazenamento.close();
+
+        Armazenamento reaberto = abrir(Journal.Durabilidade.SO);
+        try {
+            String reaplicado = new MessageProcessor(reaberto.getRepositoryManager()).processMessage("LIST;ALL");
+            assertEquals(esperado, reaplicado);
+        } finally {
+            reaberto.close();
+        }
+    }
+
+    /**
+     * LIST;ALL de um instante só: cada seção tem as linhas que o cabeçalho anuncia,
+     * em ordem e sem CPF repetido, e as estatísticas batem com as seções
+     */
+    private static void conferirListAll(String resposta) {
+        String[] linhas = resposta.split("\n");
+        int tripulantes = Integer.parseInt(linhas[1].substring("TRIPULANTES;".length()));
+        int inicioPassageiros = 2 + tripulantes;
+        int passageiros = Integer.parseInt(linhas[inicioPassageiros].substring("PASSAGEIROS;".length()));
+        int inicioAvioes = inicioPassageiros + 1 + passageiros;
+        int avioes = Integer.parseInt(linhas[inicioAvioes].substring("AVIOES;".length()));
+        assertEquals(inicioAvioes + 1 + avioes, linhas.length, resposta);
+        assertEquals(AVIOES, avioes, resposta);
+        assertEquals("ESTATISTICAS;" + RepositoryManager.formatarEstatisticas(
+                tripulantes + passageiros, tripulantes, passageiros, avioes), linhas[0]);
+
+        Set<String> cpfs = new HashSet<>();
+        String[] secoes = {"TRIPULANTE;", "PASSAGEIRO;"};
+        int[] inicios = {2, inicioPassageiros + 1};
+        int[] quantidades = {tripulantes, passageiros};
+        for (int secao = 0; secao < 2; secao++) {
+            String anterior = "";
+            for (int i = inicios[secao]; i < inicios[secao] + quantidades[secao]; i++) {
+                assertTrue(linhas[i].startsWith(secoes[secao]), linhas[i]);
+                String cpf = linhas[i].split(";")[1];
+                assertTrue(cpf.compareTo(anterior) > 0, "fora de ordem: " + linhas[i]);
+                assertTrue(cpfs.add(cpf), "CPF repetido: " + linhas[i]);
+                anterior = cpf;
+            }
+        }
+    }
+
+    /**
+     * Escritas sobre poucos CPFs e aviões, para que os mesmos registros sejam
+     * disputados: pessoas de tipos diferentes no mesmo CPF, tripulações, trocas de
+     * chave e BATCH ATOMICO
+     */
+    private static String comandoAleatorio(SplittableRandom random, int i) {
+        String cpf = String.format("%03d", random.nextInt(CPFS));
+        int aviao = random.nextInt(AVIOES);
+        int ano = 2000 + random.nextInt(2);
+        String chave = "M" + aviao + ";" + ano + ";Marca";
+        return switch (random.nextInt(9)) {
+            case 0 -> "INSERT;TRIPULANTE;" + cpf + ";Trip " + i + ";Rua;" + (1000 + i) + ";Piloto";
+            case 1 -> "INSERT;PASSAGEIRO;" + cpf + ";Pass " + i + ";Rua;" + (i % 40) + "A";
+            case 2 -> "UPDATE;TRIPULANTE;" + cpf + ";Alt " + i + ";Av;" + (2000 + i) + ";Copiloto";
+            case 3 -> "UPDATE;PASSAGEIRO;" + cpf + ";Alt " + i + ";Av;" + (i % 40) + "B";
+            case 4 -> "DELETE;PASSAGEIRO;" + cpf;
+            case 5 -> "ADD_TRIPULANTE;" + chave + ";" + cpf;
+            case 6 -> "REMOVE_TRIPULANTE;" + chave + ";" + cpf;
+            case 7 -> "UPDATE;AVIAO;" + chave + ";M" + aviao + ";" + (4001 - ano) + ";Marca";
+            default -> "BATCH;ATOMICO;2\nUPDATE;PASSAGEIRO;" + cpf + ";Lote " + i + ";Rua;1C\n"
+                    + "ADD_TRIPULANTE;" + chave + ";" + cpf;
+        };
+    }
+
+    private Armazenamento abrir(Journal.Durabilidade durabilidade) throws IOException {
+        return Armazenamento.abrir(diretorio, RepositoryManager::new,
+                repositorio -> new MessageProcessor(repositorio)::reproduzir, durabilidade, 0, 0);
+    }
+}